@@ -0,0 +1,172 @@
+package com.learniq.benchmark;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic inputs for the benchmarks, so runs on different
+ * machines measure the same work. Words are drawn from a fixed vocabulary with
+ * a skewed distribution, which gives term and page statistics closer to real
+ * study material than uniform noise.
+ */
+public final class BenchmarkData {
+    private static final String[] VOCABULARY = buildVocabulary(5000);
+    
+    /**
+     * Not instantiable
+     */
+    private BenchmarkData() {
+    }
+    
+    /**
+     * Generates prose-like text of roughly the given size
+     * 
+     * @param characters The approximate length of the text
+     * @param seed The random seed
+     * @return The text, with sentences of 8 to 24 words and a paragraph break every few sentences
+     */
+    public static String text(int characters, long seed) {
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder(characters + 64);
+        int sentences = 0;
+        while (text.length() < characters) {
+            text.append(sentence(random));
+            text.append(++sentences % 6 == 0 ? "\n\n" : " ");
+        }
+        return text.toString();
+    }
+    
+    /**
+     * Generates chunks of prose-like text
+     * 
+     * @param count The number of chunks
+     * @param chunkCharacters The approximate length of each chunk
+     * @param seed The random seed
+     * @return The chunks
+     */
+    public static List<String> chunks(int count, int chunkCharacters, long seed) {
+        Random random = new Random(seed);
+        List<String> chunks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder chunk = new StringBuilder(chunkCharacters + 64);
+            while (chunk.length() < chunkCharacters) {
+                chunk.append(sentence(random)).append(' ');
+            }
+            chunks.add(chunk.toString());
+        }
+        return chunks;
+    }
+    
+    /**
+     * Generates short questions made of words from the vocabulary
+     * 
+     * @param count The number of questions
+     * @param seed The random seed
+     * @return The questions
+     */
+    public static List<String> questions(int count, long seed) {
+        Random random = new Random(seed);
+        List<String> questions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder question = new StringBuilder("what is");
+            int words = 3 + random.nextInt(4);
+            for (int w = 0; w < words; w++) {
+                question.append(' ').append(word(random));
+            }
+            questions.add(question.append('?').toString());
+        }
+        return questions;
+    }
+    
+    /**
+     * Writes a PDF of the given number of pages filled with text
+     * 
+     * @param file The file to create
+     * @param pages The number of pages
+     * @param seed The random seed
+     * @throws IOException If the file cannot be written
+     */
+    public static void writePdf(File file, int pages, long seed) throws IOException {
+        Random random = new Random(seed);
+        try (PDDocument document = new PDDocument()) {
+            for (int p = 0; p < pages; p++) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(PDType1Font.HELVETICA, 10);
+                    content.setLeading(12);
+                    content.newLineAtOffset(50, 740);
+                    for (int line = 0; line < 55; line++) {
+                        StringBuilder text = new StringBuilder();
+                        while (text.length() < 90) {
+                            text.append(word(random)).append(' ');
+                        }
+                        content.showText(text.toString());
+                        content.newLine();
+                    }
+                    content.endText();
+                }
+            }
+            document.save(file);
+        }
+    }
+    
+    /**
+     * Generates one sentence
+     * 
+     * @param random The random source
+     * @return The sentence, ending with a full stop
+     */
+    private static String sentence(Random random) {
+        StringBuilder sentence = new StringBuilder();
+        int words = 8 + random.nextInt(17);
+        for (int w = 0; w < words; w++) {
+            if (w > 0) {
+                sentence.append(' ');
+            }
+            sentence.append(word(random));
+        }
+        return sentence.append('.').toString();
+    }
+    
+    /**
+     * Draws a word, favouring the start of the vocabulary
+     * 
+     * @param random The random source
+     * @return The word
+     */
+    private static String word(Random random) {
+        double skewed = Math.pow(random.nextDouble(), 3);
+        return VOCABULARY[(int) (skewed * VOCABULARY.length)];
+    }
+    
+    /**
+     * Builds pronounceable made-up words
+     * 
+     * @param size The number of words
+     * @return The vocabulary
+     */
+    private static String[] buildVocabulary(int size) {
+        String[] syllables = {"ka", "lo", "mi", "ter", "su", "van", "pe", "ro", "di", "ne", "sta", "qui", "bor", "fel", "ix"};
+        Random random = new Random(42);
+        String[] words = new String[size];
+        for (int i = 0; i < size; i++) {
+            StringBuilder word = new StringBuilder();
+            int count = 1 + random.nextInt(4);
+            for (int s = 0; s < count; s++) {
+                word.append(syllables[random.nextInt(syllables.length)]);
+            }
+            words[i] = word.append(i % 100).toString();
+        }
+        return words;
+    }
+}
@@ -0,0 +1,103 @@
+package com.learniq.benchmark;
+
+import com.learniq.TextChunker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The single-pass word chunker against the split("\\s+") implementation it
+ * replaced, on a multi-megabyte text. Run with -prof gc to compare allocation
+ * as well as time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ChunkerBenchmark {
+    @Param({"4"})
+    private int megabytes;
+    
+    @Param({"1000"})
+    private int chunkSize;
+    
+    private String text;
+    private TextChunker chunker;
+    
+    /**
+     * Generates the text
+     */
+    @Setup
+    public void generateText() {
+        text = BenchmarkData.text(megabytes * 1024 * 1024, 1);
+        chunker = new TextChunker(chunkSize);
+    }
+    
+    /**
+     * Splits the text with the current chunker
+     * 
+     * @return The chunks
+     */
+    @Benchmark
+    public List<String> singlePass() {
+        return chunker.split(text);
+    }
+    
+    /**
+     * Splits the text with the previous implementation
+     * 
+     * @return The chunks
+     */
+    @Benchmark
+    public List<String> splitOnWhitespace() {
+        return splitOnWhitespace(text, chunkSize);
+    }
+    
+    /**
+     * The previous PdfProcessor.splitIntoChunks, kept as the baseline
+     * 
+     * @param text The text to split
+     * @param chunkSize The approximate size of each chunk
+     * @return A list of text chunks
+     */
+    private static List<String> splitOnWhitespace(String text, int chunkSize) {
+        String[] words = text.split("\\s+");
+        List<String> chunks = new ArrayList<>();
+        
+        StringBuilder currentChunk = new StringBuilder();
+        int currentLength = 0;
+        
+        for (String word : words) {
+            int wordLength = word.length() + 1; // +1 for the space
+            currentLength += wordLength;
+            currentChunk.append(word).append(" ");
+            
+            if (currentLength >= chunkSize) {
+                chunks.add(currentChunk.toString().trim());
+                currentChunk = new StringBuilder();
+                currentLength = 0;
+            }
+        }
+        
+        // Add the last chunk if it contains anything
+        if (currentChunk.length() > 0) {
+            chunks.add(currentChunk.toString().trim());
+        }
+        
+        return chunks;
+    }
+}
@@ -0,0 +1,127 @@
+package com.learniq.benchmark;
+
+import com.learniq.retrieval.HashingEmbeddingProvider;
+import com.learniq.retrieval.HnswIndex;
+import com.learniq.retrieval.ScoredChunk;
+import com.learniq.retrieval.VectorIndex;
+import com.learniq.retrieval.VectorSearch;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Prints recall@10 of {@link HnswIndex} against exact search, with the mean
+ * query latency of both, for a range of efSearch values. This is the quality
+ * half of {@link VectorSearchBenchmark}: a faster search is only a win at a
+ * recall the caller can accept.
+ * 
+ * Usage: java -cp &lt;test classpath&gt; com.learniq.benchmark.HnswRecall [chunks] [queries]
+ */
+public final class HnswRecall {
+    private static final int TOP_K = 10;
+    private static final int[] EF_SEARCH = {16, 32, 64, 128, 256};
+    
+    /**
+     * Not instantiable
+     */
+    private HnswRecall() {
+    }
+    
+    /**
+     * Runs the measurement
+     * 
+     * @param args Optional chunk count (default 20000) and query count (default 500)
+     */
+    public static void main(String[] args) {
+        int chunkCount = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int queryCount = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        
+        HashingEmbeddingProvider embeddingProvider = new HashingEmbeddingProvider();
+        VectorIndex exact = new VectorIndex(embeddingProvider.getDimension());
+        HnswIndex hnsw = new HnswIndex(embeddingProvider.getDimension());
+        
+        long buildStart = System.nanoTime();
+        for (String chunk : BenchmarkData.chunks(chunkCount, 600, 1)) {
+            float[] vector = embeddingProvider.embed(chunk);
+            exact.add(vector);
+            hnsw.add(vector);
+        }
+        System.out.printf("Indexed %d chunks in %d ms%n", chunkCount, (System.nanoTime() - buildStart) / 1_000_000);
+        
+        List<String> questions = BenchmarkData.questions(queryCount, 2);
+        float[][] queries = new float[queryCount][];
+        for (int i = 0; i < queryCount; i++) {
+            queries[i] = embeddingProvider.embed(questions.get(i));
+        }
+        
+        // Ground truth, timed on a second pass so the first warms up the JIT
+        List<List<ScoredChunk>> truth = null;
+        long exactNanos = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            long start = System.nanoTime();
+            truth = search(exact, queries);
+            exactNanos = System.nanoTime() - start;
+        }
+        System.out.printf("exact       %8.1f us/query%n", exactNanos / 1000.0 / queryCount);
+        
+        for (int efSearch : EF_SEARCH) {
+            hnsw.setEfSearch(efSearch);
+            List<List<ScoredChunk>> approximate = null;
+            long hnswNanos = 0;
+            for (int pass = 0; pass < 2; pass++) {
+                long start = System.nanoTime();
+                approximate = search(hnsw, queries);
+                hnswNanos = System.nanoTime() - start;
+            }
+            System.out.printf("efSearch %3d %8.1f us/query  recall@%d %.3f%n",
+                    efSearch, hnswNanos / 1000.0 / queryCount, TOP_K, recall(truth, approximate));
+        }
+    }
+    
+    /**
+     * Runs every query against an index
+     * 
+     * @param index The index
+     * @param queries The query vectors
+     * @return The top results of each query
+     */
+    private static List<List<ScoredChunk>> search(VectorSearch index, float[][] queries) {
+        List<List<ScoredChunk>> results = new ArrayList<>(queries.length);
+        for (float[] query : queries) {
+            results.add(index.search(query, TOP_K));
+        }
+        return results;
+    }
+    
+    /**
+     * Computes the fraction of true top results that the approximate search found
+     * 
+     * @param truth The exact results of each query
+     * @param approximate The approximate results of each query
+     * @return The mean recall over all queries
+     */
+    private static double recall(List<List<ScoredChunk>> truth, List<List<ScoredChunk>> approximate) {
+        double total = 0;
+        for (int q = 0; q < truth.size(); q++) {
+            Set<Integer> expected = new HashSet<>();
+            for (ScoredChunk hit : truth.get(q)) {
+                expected.add(hit.getChunkId());
+            }
+            if (expected.isEmpty()) {
+                total += 1;
+                continue;
+            }
+            
+            int found = 0;
+            for (ScoredChunk hit : approximate.get(q)) {
+                if (expected.contains(hit.getChunkId())) {
+                    found++;
+                }
+            }
+            total += (double) found / expected.size();
+        }
+        return total / truth.size();
+    }
+}
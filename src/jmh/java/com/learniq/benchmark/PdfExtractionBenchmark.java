@@ -0,0 +1,73 @@
+package com.learniq.benchmark;
+
+import com.learniq.PdfProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-threaded versus page-range parallel PDF text extraction
+ * ({@link PdfProcessor#extractTextParallel}) on a generated document.
+ * A thread count of 1 takes the single-stripper path of {@link PdfProcessor#extractText}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PdfExtractionBenchmark {
+    @Param({"400"})
+    private int pages;
+    
+    @Param({"1", "2", "4", "8"})
+    private int threads;
+    
+    private final PdfProcessor pdfProcessor = new PdfProcessor();
+    private File pdfFile;
+    
+    /**
+     * Writes the document once per trial
+     * 
+     * @throws IOException If the file cannot be written
+     */
+    @Setup(Level.Trial)
+    public void writeDocument() throws IOException {
+        pdfFile = Files.createTempFile("learniq-bench", ".pdf").toFile();
+        BenchmarkData.writePdf(pdfFile, pages, 1);
+    }
+    
+    /**
+     * Deletes the document
+     */
+    @TearDown(Level.Trial)
+    public void deleteDocument() {
+        pdfFile.delete();
+    }
+    
+    /**
+     * Extracts the whole document
+     * 
+     * @return The text, so the work is not optimized away
+     * @throws IOException If the document cannot be read
+     */
+    @Benchmark
+    public String extract() throws IOException {
+        return pdfProcessor.extractTextParallel(pdfFile, threads);
+    }
+}
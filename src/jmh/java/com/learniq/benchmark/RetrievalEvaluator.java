@@ -0,0 +1,202 @@
+package com.learniq.benchmark;
+
+import com.learniq.ChunkCache;
+import com.learniq.LexicalRetriever;
+import com.learniq.PdfProcessor;
+import com.learniq.TextChunker;
+import com.learniq.TfidfVectorizer;
+import com.learniq.retrieval.DenseRetriever;
+import com.learniq.retrieval.HashingEmbeddingProvider;
+import com.learniq.retrieval.HybridRetriever;
+import com.learniq.retrieval.Retriever;
+import com.learniq.retrieval.ScoredChunk;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Offline evaluation of retrievers on a labelled question set. Each question is
+ * labelled with a passage of the document that answers it, and a chunk counts
+ * as relevant if it contains that passage. Recall@k is the fraction of questions
+ * with a relevant chunk among the first k results, so it shows how many chunks
+ * have to be sent to Gemini for a given hit rate.
+ * 
+ * Usage: mvn -P benchmarks test-compile exec:exec -Dbenchmark.main=com.learniq.benchmark.RetrievalEvaluator
+ *     -Djmh.args="document.pdf questions.tsv [maxK]"
+ * 
+ * The question file has one question per line, followed by a tab and the answer
+ * passage. Blank lines and lines starting with # are ignored.
+ */
+public class RetrievalEvaluator {
+    private final List<LabelledQuestion> questions;
+    private final int maxK;
+    
+    /**
+     * Creates an evaluator
+     * 
+     * @param questions The labelled questions
+     * @param maxK The largest k to measure recall at
+     */
+    public RetrievalEvaluator(List<LabelledQuestion> questions, int maxK) {
+        this.questions = questions;
+        this.maxK = maxK;
+    }
+    
+    /**
+     * Measures the recall of a retriever
+     * 
+     * @param retriever The retriever to evaluate
+     * @return The recall at k for k = 1 to maxK, at index k - 1
+     */
+    public double[] evaluate(Retriever retriever) {
+        int[] hitsAtRank = new int[maxK];
+        for (LabelledQuestion question : questions) {
+            List<ScoredChunk> results = retriever.retrieve(question.getQuestion(), maxK);
+            for (int rank = 0; rank < results.size(); rank++) {
+                if (question.isAnsweredBy(retriever.getChunk(results.get(rank).getChunkId()))) {
+                    hitsAtRank[rank]++;
+                    break;
+                }
+            }
+        }
+        
+        double[] recall = new double[maxK];
+        int hits = 0;
+        for (int k = 0; k < maxK; k++) {
+            hits += hitsAtRank[k];
+            recall[k] = questions.isEmpty() ? 0.0 : (double) hits / questions.size();
+        }
+        return recall;
+    }
+    
+    /**
+     * Loads a labelled question set
+     * 
+     * @param file The tab-separated question file
+     * @return The questions
+     * @throws IOException If the file cannot be read or a line has no answer passage
+     */
+    public static List<LabelledQuestion> loadQuestions(Path file) throws IOException {
+        List<LabelledQuestion> questions = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            lineNumber++;
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            
+            int tab = line.indexOf('\t');
+            if (tab < 0 || line.substring(tab + 1).isBlank()) {
+                throw new IOException("Line " + lineNumber + " has no answer passage: " + line);
+            }
+            questions.add(new LabelledQuestion(line.substring(0, tab).trim(), line.substring(tab + 1).trim()));
+        }
+        return questions;
+    }
+    
+    /**
+     * Runs the evaluation of the lexical, dense and hybrid retrievers on a document
+     * 
+     * @param args The PDF file, the question file and optionally the largest k
+     * @throws IOException If a file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: RetrievalEvaluator document.pdf questions.tsv [maxK]");
+            System.exit(1);
+        }
+        
+        int maxK = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        List<LabelledQuestion> questions = loadQuestions(Paths.get(args[1]));
+        
+        // Chunk the document the same way the app does
+        List<String> chunks = new ChunkCache().getChunks(new File(args[0]),
+            new TextChunker(TextChunker.Boundary.SENTENCE, 1000, 200), new PdfProcessor());
+        
+        TfidfVectorizer vectorizer = new TfidfVectorizer();
+        HashingEmbeddingProvider embeddingProvider = new HashingEmbeddingProvider();
+        Retriever lexical = new LexicalRetriever(vectorizer, chunks);
+        Retriever dense = new DenseRetriever(embeddingProvider, chunks);
+        
+        Map<String, Retriever> retrievers = new LinkedHashMap<>();
+        retrievers.put("lexical", lexical);
+        retrievers.put("dense", dense);
+        retrievers.put("hybrid-rrf", new HybridRetriever(lexical, dense));
+        retrievers.put("hybrid-weighted", new HybridRetriever(lexical, dense,
+            HybridRetriever.Fusion.WEIGHTED, 0.5, 20, 200));
+        
+        System.out.printf(Locale.ROOT, "%d questions, %d chunks%n", questions.size(), chunks.size());
+        StringBuilder header = new StringBuilder(String.format(Locale.ROOT, "%-16s", "retriever"));
+        for (int k = 1; k <= maxK; k++) {
+            header.append(String.format(Locale.ROOT, "%7s", "R@" + k));
+        }
+        System.out.println(header);
+        
+        RetrievalEvaluator evaluator = new RetrievalEvaluator(questions, maxK);
+        for (Map.Entry<String, Retriever> entry : retrievers.entrySet()) {
+            StringBuilder row = new StringBuilder(String.format(Locale.ROOT, "%-16s", entry.getKey()));
+            for (double recall : evaluator.evaluate(entry.getValue())) {
+                row.append(String.format(Locale.ROOT, "%7.3f", recall));
+            }
+            System.out.println(row);
+        }
+    }
+    
+    /**
+     * A question labelled with the passage that answers it
+     */
+    public static class LabelledQuestion {
+        private final String question;
+        private final String answerPassage;
+        
+        /**
+         * Creates a labelled question
+         * 
+         * @param question The question
+         * @param answerPassage Text that a relevant chunk contains
+         */
+        public LabelledQuestion(String question, String answerPassage) {
+            this.question = question;
+            this.answerPassage = answerPassage;
+        }
+        
+        /**
+         * Gets the question
+         * 
+         * @return The question
+         */
+        public String getQuestion() {
+            return question;
+        }
+        
+        /**
+         * Checks whether a chunk contains the answer passage, ignoring case and
+         * differences in whitespace
+         * 
+         * @param chunk The chunk text
+         * @return true if the chunk is relevant to the question
+         */
+        public boolean isAnsweredBy(String chunk) {
+            return normalize(chunk).contains(normalize(answerPassage));
+        }
+        
+        /**
+         * Lowercases text and collapses runs of whitespace
+         * 
+         * @param text The text
+         * @return The normalized text
+         */
+        private static String normalize(String text) {
+            return text.toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+        }
+    }
+}
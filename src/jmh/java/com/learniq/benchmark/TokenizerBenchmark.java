@@ -0,0 +1,98 @@
+package com.learniq.benchmark;
+
+import com.learniq.retrieval.Tokenizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Tokenizing chunk-sized text with {@link Tokenizer#tokenizeChars}, as the
+ * index does, against the regex normalizeText it replaced. Each invocation
+ * tokenizes a batch of chunks. Run with -prof gc to compare allocation as well
+ * as time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TokenizerBenchmark {
+    private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^a-zA-Z0-9]");
+    
+    @Param({"2000"})
+    private int chunkCount;
+    
+    @Param({"1000"})
+    private int chunkSize;
+    
+    private final Tokenizer tokenizer = new Tokenizer();
+    private List<String> chunks;
+    
+    /**
+     * Generates the chunks
+     */
+    @Setup
+    public void generateChunks() {
+        chunks = BenchmarkData.chunks(chunkCount, chunkSize, 1);
+    }
+    
+    /**
+     * Tokenizes every chunk into the reused character buffer
+     * 
+     * @param blackhole Consumes the terms
+     */
+    @Benchmark
+    public void tokenizeChars(Blackhole blackhole) {
+        for (String chunk : chunks) {
+            tokenizer.tokenizeChars(chunk, (buffer, length) -> blackhole.consume(length));
+        }
+    }
+    
+    /**
+     * Tokenizes every chunk with the previous implementation
+     * 
+     * @param blackhole Consumes the terms
+     */
+    @Benchmark
+    public void normalizeText(Blackhole blackhole) {
+        for (String chunk : chunks) {
+            for (String term : normalizeText(chunk)) {
+                blackhole.consume(term);
+            }
+        }
+    }
+    
+    /**
+     * The previous TfidfVectorizer.normalizeText, kept as the baseline
+     * 
+     * @param text The text to process
+     * @return Array of normalized words
+     */
+    private static String[] normalizeText(String text) {
+        // Convert to lowercase
+        String lowerText = text.toLowerCase();
+        
+        // Remove non-alphanumeric characters and replace with spaces
+        String cleanText = NON_ALPHANUMERIC.matcher(lowerText).replaceAll(" ");
+        
+        // Split into words and filter out short words
+        return Arrays.stream(cleanText.split("\\s+"))
+            .filter(word -> word.length() > 2) // Filter out short words
+            .toArray(String[]::new);
+    }
+}
@@ -0,0 +1,98 @@
+package com.learniq.benchmark;
+
+import com.learniq.retrieval.HashingEmbeddingProvider;
+import com.learniq.retrieval.HnswIndex;
+import com.learniq.retrieval.ScoredChunk;
+import com.learniq.retrieval.VectorIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query latency of exact vector search against HNSW over chunk embeddings.
+ * Latency alone says nothing about result quality; {@link HnswRecall}
+ * measures the recall that goes with each efSearch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class VectorSearchBenchmark {
+    private static final int QUERY_COUNT = 256;
+    
+    @Param({"20000"})
+    private int chunks;
+    
+    @Param({"32", "64", "128"})
+    private int efSearch;
+    
+    private VectorIndex exact;
+    private HnswIndex hnsw;
+    private float[][] queries;
+    private int next;
+    
+    /**
+     * Embeds the chunks and builds both indexes
+     */
+    @Setup
+    public void buildIndexes() {
+        HashingEmbeddingProvider embeddingProvider = new HashingEmbeddingProvider();
+        exact = new VectorIndex(embeddingProvider.getDimension());
+        hnsw = new HnswIndex(embeddingProvider.getDimension(), 16, 200, efSearch);
+        for (String chunk : BenchmarkData.chunks(chunks, 600, 1)) {
+            float[] vector = embeddingProvider.embed(chunk);
+            exact.add(vector);
+            hnsw.add(vector);
+        }
+        
+        List<String> questions = BenchmarkData.questions(QUERY_COUNT, 2);
+        queries = new float[QUERY_COUNT][];
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            queries[i] = embeddingProvider.embed(questions.get(i));
+        }
+    }
+    
+    /**
+     * Finds the top 10 by scanning every vector
+     * 
+     * @return The results
+     */
+    @Benchmark
+    public List<ScoredChunk> exactSearch() {
+        return exact.search(nextQuery(), 10);
+    }
+    
+    /**
+     * Finds the approximate top 10 with HNSW
+     * 
+     * @return The results
+     */
+    @Benchmark
+    public List<ScoredChunk> hnswSearch() {
+        return hnsw.search(nextQuery(), 10);
+    }
+    
+    /**
+     * Cycles through the queries so no single query is cached
+     * 
+     * @return The next query vector
+     */
+    private float[] nextQuery() {
+        float[] query = queries[next];
+        next = (next + 1) % QUERY_COUNT;
+        return query;
+    }
+}
@@ -1,20 +1,29 @@
 package com.learniq;
 
+import com.learniq.retrieval.Retriever;
+import com.learniq.retrieval.RetrievedChunk;
+
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Panel for displaying chat messages and interacting with the AI
  */
 public class ChatPanel extends JPanel {
     private final GeminiClient geminiClient;
-    private final TfidfVectorizer vectorizer;
-    private final List<String> textChunks;
+    private final Retriever retriever;
+    private final String documentKey;
     private final String userLevel;
+    private final ResponseCache responseCache = ResponseCache.getInstance();
+    private final SemanticResponseCache semanticCache = SemanticResponseCache.getInstance();
     
     private final JTextArea chatDisplay;
     private final JTextField userInput;
@@ -25,14 +34,14 @@ public class ChatPanel extends JPanel {
      * Creates a new chat panel
      * 
      * @param geminiClient The Gemini client to use for generating responses
-     * @param vectorizer The vectorizer to use for finding relevant context
-     * @param textChunks The text chunks from the document
+     * @param retriever The retriever to use for finding relevant context in the document
+     * @param documentKey Identifies the document being discussed, e.g. its content hash, for caching answers
      * @param userLevel The user's skill level
      */
-    public ChatPanel(GeminiClient geminiClient, TfidfVectorizer vectorizer, List<String> textChunks, String userLevel) {
+    public ChatPanel(GeminiClient geminiClient, Retriever retriever, String documentKey, String userLevel) {
         this.geminiClient = geminiClient;
-        this.vectorizer = vectorizer;
-        this.textChunks = textChunks;
+        this.retriever = retriever;
+        this.documentKey = documentKey;
         this.userLevel = userLevel;
         
         // Set up the layout
@@ -118,33 +127,79 @@ public class ChatPanel extends JPanel {
         sendButton.setEnabled(false);
         userInput.setEnabled(false);
         
-        // Find relevant context
-        List<String> relevantChunks = vectorizer.getRelevantChunks(message, textChunks, 3);
-        String context = String.join("\n\n", relevantChunks);
-        
-        // Generate a response in a background thread
-        SwingWorker<String, Void> worker = new SwingWorker<>() {
+        // Retrieve and stream the response in a background thread, showing the text as it arrives
+        chatDisplay.append("LearnIQ AI: ");
+        SwingWorker<String, String> worker = new SwingWorker<>() {
+            // Set by doInBackground, read by done
+            private String sourceLine = "";
+            
             @Override
-            protected String doInBackground() {
-                try {
-                    return geminiClient.generateAdaptiveResponse(message, context, userLevel);
-                } catch (IOException ex) {
-                    return "Sorry, I encountered an error while generating a response: " + ex.getMessage();
+            protected String doInBackground() throws IOException {
+                // Find relevant context; sentence-aligned chunks need fewer of them to cover an idea
+                List<String> relevantChunks = new ArrayList<>();
+                Set<String> sources = new LinkedHashSet<>();
+                for (RetrievedChunk result : retriever.retrieveChunks(message, 2)) {
+                    String chunk = result.getText();
+                    
+                    // Library chunks are tagged with their document and page so the answer can say where it comes from
+                    String source = result.getSource();
+                    if (source != null) {
+                        sources.add(source);
+                        chunk = "[Source: " + source + "]\n" + chunk;
+                    }
+                    relevantChunks.add(chunk);
+                }
+                String context = String.join("\n\n", relevantChunks);
+                if (!sources.isEmpty()) {
+                    sourceLine = "Sources: " + String.join("; ", sources) + "\n\n";
+                }
+                
+                // The same question with the same context was already answered
+                String cacheKey = ResponseCache.key(documentKey, message, userLevel, context);
+                String cachedResponse = responseCache.get(cacheKey);
+                if (cachedResponse == null) {
+                    // A reworded version of the question may have been answered before
+                    cachedResponse = semanticCache.get(documentKey, userLevel, message);
+                }
+                if (cachedResponse != null) {
+                    publish(cachedResponse);
+                    return cachedResponse;
                 }
+                
+                String response = geminiClient.streamAdaptiveResponse(message, context, userLevel,
+                    delta -> publish(delta));
+                
+                // Only successful answers are cached
+                responseCache.put(cacheKey, response);
+                semanticCache.put(documentKey, userLevel, message, response);
+                return response;
+            }
+            
+            @Override
+            protected void process(List<String> deltas) {
+                for (String delta : deltas) {
+                    chatDisplay.append(delta);
+                }
+                
+                // Keep the newest text in view
+                chatDisplay.setCaretPosition(chatDisplay.getDocument().getLength());
             }
             
             @Override
             protected void done() {
                 try {
-                    String response = get();
-                    chatDisplay.append("LearnIQ AI: " + response + "\n\n");
-                    
-                    // Scroll to the bottom of the chat
-                    chatDisplay.setCaretPosition(chatDisplay.getDocument().getLength());
+                    get();
+                    chatDisplay.append("\n\n" + sourceLine);
+                } catch (ExecutionException ex) {
+                    chatDisplay.append("\nSorry, I encountered an error while generating a response: "
+                        + ex.getCause().getMessage() + "\n\n");
                 } catch (Exception ex) {
-                    chatDisplay.append("LearnIQ AI: Sorry, I encountered an error: " + ex.getMessage() + "\n\n");
+                    chatDisplay.append("\nSorry, I encountered an error: " + ex.getMessage() + "\n\n");
                 }
                 
+                // Scroll to the bottom of the chat
+                chatDisplay.setCaretPosition(chatDisplay.getDocument().getLength());
+                
                 // Re-enable the send button and input field
                 sendButton.setEnabled(true);
                 userInput.setEnabled(true);
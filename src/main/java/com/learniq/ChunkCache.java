@@ -0,0 +1,267 @@
+package com.learniq;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * On-disk cache of document chunks, keyed by the SHA-256 of the file contents
+ * and the chunking strategy, so a document is only extracted and chunked once.
+ * Entries are stored as a deflated stream of start pages and length-prefixed
+ * UTF-8 strings.
+ */
+public class ChunkCache {
+    private static final Logger LOGGER = Logger.getLogger(ChunkCache.class.getName());
+    private static final String CACHE_FOLDER = "chunk_cache";
+    private static final int MAGIC = 0x4c514348; // "LQCH"
+    private static final int VERSION = 2;
+    
+    // Hashes of files already read in this session, keyed by path, size and modification time
+    private static final Map<String, String> FILE_HASHES = new ConcurrentHashMap<>();
+    
+    private final Path cacheDir;
+    
+    /**
+     * Creates a cache in the default chunk_cache folder
+     */
+    public ChunkCache() {
+        this(Paths.get(CACHE_FOLDER));
+    }
+    
+    /**
+     * Creates a cache in the given folder
+     * 
+     * @param cacheDir The folder to store cache entries in
+     */
+    public ChunkCache(Path cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+    
+    /**
+     * Gets the chunks of a PDF file from the cache, extracting and caching them on a miss
+     * 
+     * @param pdfFile The PDF file to process
+     * @param strategy The chunking strategy to use
+     * @param pdfProcessor The processor used to extract the text on a miss
+     * @return The document chunks
+     * @throws IOException If the file cannot be read
+     */
+    public List<String> getChunks(File pdfFile, ChunkingStrategy strategy, PdfProcessor pdfProcessor) throws IOException {
+        return getDocumentChunks(pdfFile, strategy, pdfProcessor).getChunks();
+    }
+    
+    /**
+     * Gets the chunks of a PDF file and their pages from the cache, extracting and
+     * caching them on a miss
+     * 
+     * @param pdfFile The PDF file to process
+     * @param strategy The chunking strategy to use
+     * @param pdfProcessor The processor used to extract the text on a miss
+     * @return The document chunks with their pages
+     * @throws IOException If the file cannot be read
+     */
+    public DocumentChunks getDocumentChunks(File pdfFile, ChunkingStrategy strategy, PdfProcessor pdfProcessor) throws IOException {
+        String contentHash = hashFile(pdfFile);
+        
+        DocumentChunks cached = load(contentHash, strategy);
+        if (cached != null) {
+            return cached;
+        }
+        
+        List<String> chunks = new ArrayList<>();
+        List<Integer> pages = new ArrayList<>();
+        pdfProcessor.extractChunks(pdfFile, strategy, (chunk, page) -> {
+            chunks.add(chunk);
+            pages.add(page);
+        });
+        
+        DocumentChunks documentChunks = new DocumentChunks(chunks, pages.stream().mapToInt(Integer::intValue).toArray());
+        store(contentHash, strategy, documentChunks);
+        return documentChunks;
+    }
+    
+    /**
+     * Loads cached chunks. A corrupt entry is treated as a miss; the counts and
+     * lengths in it are checked as they are read and never used to size an
+     * allocation up front.
+     * 
+     * @param contentHash The SHA-256 of the file contents
+     * @param strategy The chunking strategy the chunks were made with
+     * @return The cached chunks, or null if there is no usable entry
+     */
+    public DocumentChunks load(String contentHash, ChunkingStrategy strategy) {
+        Path entry = entryPath(contentHash, strategy);
+        if (!Files.exists(entry)) {
+            return null;
+        }
+        
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new InflaterInputStream(Files.newInputStream(entry))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                LOGGER.warning("Ignoring chunk cache entry with unknown format: " + entry);
+                return null;
+            }
+            
+            int count = in.readInt();
+            if (count < 0) {
+                throw new IOException("Negative chunk count " + count);
+            }
+            
+            List<String> chunks = new ArrayList<>();
+            int[] pages = new int[Math.min(count, 1024)];
+            for (int i = 0; i < count; i++) {
+                if (i == pages.length) {
+                    pages = Arrays.copyOf(pages, Math.min(count, pages.length * 2));
+                }
+                pages[i] = in.readInt();
+                
+                int length = in.readInt();
+                if (length < 0) {
+                    throw new IOException("Negative chunk length " + length);
+                }
+                // Reads in small steps, so a bogus length fails at the end of the data instead of allocating it
+                byte[] bytes = in.readNBytes(length);
+                if (bytes.length != length) {
+                    throw new EOFException("Chunk cache entry ends in the middle of a chunk");
+                }
+                chunks.add(new String(bytes, StandardCharsets.UTF_8));
+            }
+            return new DocumentChunks(chunks, pages);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Ignoring unreadable chunk cache entry " + entry + ": " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Stores chunks in the cache. Failures are logged and otherwise ignored,
+     * since the cache is only an optimization.
+     * 
+     * @param contentHash The SHA-256 of the file contents
+     * @param strategy The chunking strategy the chunks were made with
+     * @param documentChunks The chunks to store
+     */
+    public void store(String contentHash, ChunkingStrategy strategy, DocumentChunks documentChunks) {
+        Path entry = entryPath(contentHash, strategy);
+        Path tempFile = null;
+        
+        try {
+            Files.createDirectories(cacheDir);
+            
+            // Write to a temporary file first so readers never see a partial entry
+            tempFile = Files.createTempFile(cacheDir, contentHash, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new DeflaterOutputStream(Files.newOutputStream(tempFile))))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(documentChunks.size());
+                for (int i = 0; i < documentChunks.size(); i++) {
+                    byte[] bytes = documentChunks.getChunks().get(i).getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(documentChunks.getPage(i));
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+            }
+            
+            try {
+                Files.move(tempFile, entry, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Error writing chunk cache entry: " + e.getMessage(), e);
+        } finally {
+            deleteTempFile(tempFile);
+        }
+    }
+    
+    /**
+     * Computes the SHA-256 of a file's contents. The hash is remembered until the
+     * file's size or modification time changes, so a file is read only once per session.
+     * 
+     * @param file The file to hash
+     * @return The hash as a lowercase hex string
+     * @throws IOException If the file cannot be read
+     */
+    public static String hashFile(File file) throws IOException {
+        String key = file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+        String known = FILE_HASHES.get(key);
+        if (known != null) {
+            return known;
+        }
+        
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        
+        FILE_HASHES.put(key, hex.toString());
+        return hex.toString();
+    }
+    
+    /**
+     * Gets the path of a cache entry
+     * 
+     * @param contentHash The SHA-256 of the file contents
+     * @param strategy The chunking strategy
+     * @return The entry path
+     */
+    private Path entryPath(String contentHash, ChunkingStrategy strategy) {
+        return cacheDir.resolve(contentHash + "_" + strategy.getId() + ".chunks");
+    }
+    
+    /**
+     * Deletes the temporary file of a write that did not complete. After a
+     * successful move the file is already gone.
+     * 
+     * @param tempFile The temporary file, or null if none was created
+     */
+    private static void deleteTempFile(Path tempFile) {
+        if (tempFile == null) {
+            return;
+        }
+        
+        try {
+            Files.deleteIfExists(tempFile);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not delete temporary chunk cache file " + tempFile + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.learniq;
+
+import java.util.List;
+
+/**
+ * Strategy for splitting document text into chunks for retrieval
+ */
+public interface ChunkingStrategy {
+    /**
+     * Splits text into chunks
+     * 
+     * @param text The text to split
+     * @return The chunks in document order
+     */
+    List<String> split(CharSequence text);
+    
+    /**
+     * Gets an identifier for this strategy and its parameters. Two strategies with
+     * the same id must produce the same chunks for the same text.
+     * 
+     * @return The strategy id, safe to use in a file name
+     */
+    String getId();
+}
@@ -0,0 +1,55 @@
+package com.learniq;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The chunks of a document together with the page each chunk starts on
+ */
+public class DocumentChunks {
+    private final List<String> chunks;
+    private final int[] pages;
+    
+    /**
+     * Creates a new set of document chunks
+     * 
+     * @param chunks The chunks in document order
+     * @param pages The 1-based start page of each chunk, parallel to chunks
+     */
+    public DocumentChunks(List<String> chunks, int[] pages) {
+        if (chunks.size() != pages.length) {
+            throw new IllegalArgumentException("Every chunk needs a page number");
+        }
+        
+        this.chunks = Collections.unmodifiableList(chunks);
+        this.pages = pages;
+    }
+    
+    /**
+     * Gets the chunks
+     * 
+     * @return The chunks in document order
+     */
+    public List<String> getChunks() {
+        return chunks;
+    }
+    
+    /**
+     * Gets the page a chunk starts on
+     * 
+     * @param chunkIndex The position of the chunk
+     * @return The 1-based page number
+     */
+    public int getPage(int chunkIndex) {
+        return pages[chunkIndex];
+    }
+    
+    /**
+     * Gets the number of chunks
+     * 
+     * @return The chunk count
+     */
+    public int size() {
+        return chunks.size();
+    }
+}
@@ -2,24 +2,98 @@ package com.learniq;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.net.http.HttpTimeoutException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import com.learniq.GeminiRateLimiter.Priority;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
 /**
- * Client for interacting with Google's Gemini API for text generation
+ * Client for interacting with Google's Gemini API for text generation.
+ * All clients share one HTTP client, so connections are kept alive and reused
+ * across requests, and HTTP/2 multiplexes concurrent requests over a single
+ * TLS connection instead of paying a handshake per call.
+ * 
+ * The connection settings can be changed with environment variables:
+ * GEMINI_CONNECT_TIMEOUT_MS, GEMINI_REQUEST_TIMEOUT_MS, GEMINI_KEEPALIVE_SECONDS
+ * and GEMINI_POOL_SIZE (the maximum number of idle HTTP/1.1 connections kept open).
+ * 
+ * Requests also share one {@link GeminiRateLimiter}, set up with GEMINI_REQUESTS_PER_MINUTE,
+ * GEMINI_BURST and GEMINI_MAX_IN_FLIGHT. Chat requests are sent as interactive and quiz
+ * generation as background work, so a waiting user is served first.
+ * 
+ * Timeouts, connection failures, 429 and 5xx responses are retried with full-jitter
+ * exponential backoff (GEMINI_MAX_RETRIES, GEMINI_RETRY_BASE_MS, GEMINI_RETRY_MAX_MS).
+ * GEMINI_READ_TIMEOUT_MS bounds how long a response body may stall, and
+ * GEMINI_HEDGE_REQUESTS=true sends a second copy of requests slower than the recent p95.
+ * 
+ * Responses are cached by a shared {@link GeminiResponseCache}, so sending the exact
+ * same request again is answered locally. GEMINI_CACHE_ENTRIES sets the size of the
+ * in-memory tier (0 turns caching off), GEMINI_CACHE_DIR the folder of the on-disk
+ * tier and GEMINI_CACHE_TTL_HOURS how long responses are reused.
  */
 public class GeminiClient {
+    private static final String DEFAULT_BASE_URL = "https://generativelanguage.googleapis.com/v1/";
+    private static final long DEFAULT_CONNECT_TIMEOUT_MS = 10_000;
+    private static final long DEFAULT_REQUEST_TIMEOUT_MS = 60_000;
+    private static final long DEFAULT_REQUESTS_PER_MINUTE = 60;
+    private static final long DEFAULT_BURST = 5;
+    private static final long DEFAULT_MAX_IN_FLIGHT = 8;
+    private static final long DEFAULT_READ_TIMEOUT_MS = 30_000;
+    private static final long DEFAULT_MAX_RETRIES = 2;
+    private static final long DEFAULT_RETRY_BASE_MS = 250;
+    private static final long DEFAULT_RETRY_MAX_MS = 4_000;
+    private static final double HEDGE_PERCENTILE = 0.95;
+    private static final long DEFAULT_CACHE_ENTRIES = 500;
+    private static final long DEFAULT_CACHE_TTL_HOURS = 7 * 24;
+    private static final String DEFAULT_CACHE_FOLDER = "response_cache";
+    private static final String CACHE_LOG_FILE = "responses.log";
+    private static HttpClient sharedHttpClient;
+    private static GeminiRateLimiter sharedRateLimiter;
+    private static GeminiResponseCache sharedResponseCache;
+    private static boolean sharedResponseCacheCreated;
+    
     private final String apiKey;
     private final String model;
-    private static final String API_URL = "https://generativelanguage.googleapis.com/v1/%s:generateContent?key=%s";
+    private final String baseUrl;
+    private final HttpClient httpClient;
+    private final Duration requestTimeout;
+    private final GeminiRateLimiter rateLimiter;
+    private final GeminiResponseCache responseCache;
+    private final LatencyTracker latencyTracker = new LatencyTracker(256, 20);
+    private final long readTimeoutMillis;
+    private volatile int maxRetries;
+    private volatile long retryBaseDelayMillis;
+    private volatile long retryMaxDelayMillis;
+    private volatile boolean hedgingEnabled;
     
     /**
      * Creates a new client for the Gemini API
@@ -28,8 +102,63 @@ public class GeminiClient {
      * @param model The model to use (e.g., "models/gemini-1.5-pro")
      */
     public GeminiClient(String apiKey, String model) {
+        this(apiKey, model, DEFAULT_BASE_URL, getSharedHttpClient(),
+            Duration.ofMillis(getLongSetting("GEMINI_REQUEST_TIMEOUT_MS", DEFAULT_REQUEST_TIMEOUT_MS)));
+    }
+    
+    /**
+     * Creates a new client for the Gemini API with a custom endpoint and HTTP client
+     * 
+     * @param apiKey The API key to authenticate with
+     * @param model The model to use (e.g., "models/gemini-1.5-pro")
+     * @param baseUrl The API root that model paths are resolved against, ending in a slash
+     * @param httpClient The HTTP client to send requests with
+     * @param requestTimeout How long to wait for a response to each request
+     */
+    public GeminiClient(String apiKey, String model, String baseUrl, HttpClient httpClient, Duration requestTimeout) {
+        this(apiKey, model, baseUrl, httpClient, requestTimeout, getSharedRateLimiter());
+    }
+    
+    /**
+     * Creates a new client for the Gemini API with a custom endpoint, HTTP client and rate limiter
+     * 
+     * @param apiKey The API key to authenticate with
+     * @param model The model to use (e.g., "models/gemini-1.5-pro")
+     * @param baseUrl The API root that model paths are resolved against, ending in a slash
+     * @param httpClient The HTTP client to send requests with
+     * @param requestTimeout How long to wait for a response to each request
+     * @param rateLimiter The rate limiter every request has to pass
+     */
+    public GeminiClient(String apiKey, String model, String baseUrl, HttpClient httpClient, Duration requestTimeout,
+                        GeminiRateLimiter rateLimiter) {
+        this(apiKey, model, baseUrl, httpClient, requestTimeout, rateLimiter, getSharedResponseCache());
+    }
+    
+    /**
+     * Creates a new client for the Gemini API with a custom endpoint, HTTP client, rate limiter and response cache
+     * 
+     * @param apiKey The API key to authenticate with
+     * @param model The model to use (e.g., "models/gemini-1.5-pro")
+     * @param baseUrl The API root that model paths are resolved against, ending in a slash
+     * @param httpClient The HTTP client to send requests with
+     * @param requestTimeout How long to wait for a response to each request
+     * @param rateLimiter The rate limiter every request has to pass
+     * @param responseCache The cache for responses, or null to always call the API
+     */
+    public GeminiClient(String apiKey, String model, String baseUrl, HttpClient httpClient, Duration requestTimeout,
+                        GeminiRateLimiter rateLimiter, GeminiResponseCache responseCache) {
         this.apiKey = apiKey;
         this.model = model;
+        this.baseUrl = baseUrl;
+        this.httpClient = httpClient;
+        this.requestTimeout = requestTimeout;
+        this.rateLimiter = rateLimiter;
+        this.responseCache = responseCache;
+        this.readTimeoutMillis = getLongSetting("GEMINI_READ_TIMEOUT_MS", DEFAULT_READ_TIMEOUT_MS);
+        this.maxRetries = (int) getLongSetting("GEMINI_MAX_RETRIES", DEFAULT_MAX_RETRIES);
+        this.retryBaseDelayMillis = getLongSetting("GEMINI_RETRY_BASE_MS", DEFAULT_RETRY_BASE_MS);
+        this.retryMaxDelayMillis = getLongSetting("GEMINI_RETRY_MAX_MS", DEFAULT_RETRY_MAX_MS);
+        this.hedgingEnabled = Boolean.parseBoolean(System.getenv("GEMINI_HEDGE_REQUESTS"));
     }
     
     /**
@@ -49,7 +178,27 @@ public class GeminiClient {
      * @throws IOException If the API request fails
      */
     public String generateQuiz(String context) throws IOException {
-        String prompt = String.format(
+        return generateText(createQuizPrompt(context), Priority.BACKGROUND);
+    }
+    
+    /**
+     * Generates a quiz without blocking the calling thread
+     * 
+     * @param context The text context to generate questions from
+     * @return A future for the generated quiz; cancelling it aborts the request
+     */
+    public CompletableFuture<String> generateQuizAsync(String context) {
+        return generateTextAsync(createQuizPrompt(context), Priority.BACKGROUND);
+    }
+    
+    /**
+     * Builds the prompt for a quiz
+     * 
+     * @param context The text context to generate questions from
+     * @return The prompt
+     */
+    private String createQuizPrompt(String context) {
+        return String.format(
             "Based on this text from a book, create 5 multiple choice questions.%n" +
             "For each question, specify if it's [BEGINNER], [INTERMEDIATE], or [ADVANCED].%n" +
             "Make 2 beginner, 2 intermediate, and 1 advanced question.%n%n" +
@@ -62,8 +211,6 @@ public class GeminiClient {
             "Correct: A%n%n" +
             "Text content:%n%s%n%n" +
             "Generate 5 questions following the exact format above:", context);
-            
-        return generateText(prompt);
     }
     
     /**
@@ -76,6 +223,45 @@ public class GeminiClient {
      * @throws IOException If the API request fails
      */
     public String generateAdaptiveResponse(String question, String context, String level) throws IOException {
+        return generateText(createAdaptivePrompt(question, context, level));
+    }
+    
+    /**
+     * Generates an adaptive response without blocking the calling thread
+     * 
+     * @param question The user's question
+     * @param context The relevant context from the document
+     * @param level The user's skill level (beginner, intermediate, advanced)
+     * @return A future for the response; cancelling it aborts the request
+     */
+    public CompletableFuture<String> generateAdaptiveResponseAsync(String question, String context, String level) {
+        return generateTextAsync(createAdaptivePrompt(question, context, level));
+    }
+    
+    /**
+     * Streams an adaptive response based on the user's skill level, handing each
+     * piece of text to the listener as soon as it arrives
+     * 
+     * @param question The user's question
+     * @param context The relevant context from the document
+     * @param level The user's skill level (beginner, intermediate, advanced)
+     * @param onText Receives the response text in order, one piece at a time
+     * @return The complete response
+     * @throws IOException If the API request fails
+     */
+    public String streamAdaptiveResponse(String question, String context, String level, Consumer<String> onText) throws IOException {
+        return streamText(createAdaptivePrompt(question, context, level), onText);
+    }
+    
+    /**
+     * Builds the prompt for an adaptive response
+     * 
+     * @param question The user's question
+     * @param context The relevant context from the document
+     * @param level The user's skill level (beginner, intermediate, advanced)
+     * @return The prompt
+     */
+    private String createAdaptivePrompt(String question, String context, String level) {
         Map<String, String> prompts = new HashMap<>();
         
         prompts.put("beginner", 
@@ -84,12 +270,12 @@ public class GeminiClient {
             "Context:%n%s%n%n" +
             "Question: %s%n%n" +
             "Give a beginner-friendly response:");
-            
+        
         prompts.put("intermediate", 
             "Context:%n%s%n%n" +
             "Question: %s%n%n" +
             "Provide a balanced response with some technical details:");
-            
+        
         prompts.put("advanced", 
             "You are explaining to an advanced user. Be concise and include advanced concepts. " +
             "Also suggest a related challenging question for them to think about.%n%n" +
@@ -98,9 +284,7 @@ public class GeminiClient {
             "Provide an advanced response and a follow-up question:");
         
         String promptTemplate = prompts.getOrDefault(level.toLowerCase(), prompts.get("intermediate"));
-        String prompt = String.format(promptTemplate, context, question);
-        
-        return generateText(prompt);
+        return String.format(promptTemplate, context, question);
     }
     
     /**
@@ -111,39 +295,672 @@ public class GeminiClient {
      * @throws IOException If the API request fails
      */
     public String generateText(String prompt) throws IOException {
-        // Create the URL with the model and API key
-        URL url = new URL(String.format(API_URL, model, apiKey));
+        return generateText(prompt, Priority.INTERACTIVE);
+    }
+    
+    /**
+     * Generates text using the Gemini API, waiting for the rate limiter in the given priority class.
+     * Timeouts, connection failures, 429 and 5xx responses are retried with backoff.
+     * A request that was answered before is served from the response cache.
+     * 
+     * @param prompt The prompt to generate text from
+     * @param priority The priority class of the request
+     * @return The generated text
+     * @throws IOException If the API request fails
+     */
+    public String generateText(String prompt, Priority priority) throws IOException {
+        // A hedge needs two requests in flight at once, which only the asynchronous path can do
+        if (hedgingEnabled) {
+            return awaitResult(generateTextAsync(prompt, priority));
+        }
         
-        // Set up the connection
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod("POST");
-        connection.setRequestProperty("Content-Type", "application/json");
-        connection.setDoOutput(true);
+        String requestBody = createRequestBody(prompt);
+        String cacheKey = GeminiResponseCache.key(model, requestBody);
+        String cached = getCachedResponse(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
         
-        // Create the request body
+        HttpRequest request = createRequest(":generateContent?", requestBody);
+        for (int attempt = 0; ; attempt++) {
+            try {
+                String text = sendRequest(request, priority);
+                cacheResponse(cacheKey, text);
+                return text;
+            } catch (IOException e) {
+                if (attempt >= maxRetries || !isRetryable(e)) {
+                    throw e;
+                }
+                sleepBeforeRetry(attempt);
+            }
+        }
+    }
+    
+    /**
+     * Sends one generation request and waits for the response
+     * 
+     * @param request The request
+     * @param priority The priority class of the request
+     * @return The generated text
+     * @throws IOException If the API request fails
+     */
+    private String sendRequest(HttpRequest request, Priority priority) throws IOException {
+        acquirePermit(priority);
+        long start = System.nanoTime();
+        HttpResponse<InputStream> response = null;
+        try {
+            response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            
+            // Parse the response straight from the stream instead of joining it into a string first
+            try (InputStream body = new IdleTimeoutInputStream(response.body(), readTimeoutMillis)) {
+                if (response.statusCode() == 200) {
+                    String text = parseTextFromResponse(new JSONTokener(
+                        new InputStreamReader(body, StandardCharsets.UTF_8)));
+                    
+                    // Read to the end so the connection goes back to the pool instead of being closed
+                    body.transferTo(OutputStream.nullOutputStream());
+                    latencyTracker.record((System.nanoTime() - start) / 1_000_000);
+                    return text;
+                }
+                
+                String error = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+                throw new ApiStatusException(response.statusCode(), error);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("API request was interrupted");
+        } finally {
+            releasePermit(response);
+        }
+    }
+    
+    /**
+     * Generates text using the Gemini API without blocking the calling thread.
+     * The request is sent by the HTTP client's own threads, so many requests can
+     * be in flight without a thread waiting on each one.
+     * 
+     * @param prompt The prompt to generate text from
+     * @return A future for the generated text, failing with an IOException if the
+     *         request fails; cancelling it aborts the request
+     */
+    public CompletableFuture<String> generateTextAsync(String prompt) {
+        return generateTextAsync(prompt, Priority.INTERACTIVE);
+    }
+    
+    /**
+     * Generates text using the Gemini API without blocking the calling thread,
+     * waiting for the rate limiter in the given priority class. Failed attempts are
+     * retried like in {@link #generateText(String, Priority)}, and if hedging is
+     * enabled a second request is sent when the first is slower than usual.
+     * 
+     * @param prompt The prompt to generate text from
+     * @param priority The priority class of the request
+     * @return A future for the generated text, failing with an IOException if the
+     *         request fails; cancelling it withdraws or aborts the request
+     */
+    public CompletableFuture<String> generateTextAsync(String prompt, Priority priority) {
         String requestBody = createRequestBody(prompt);
+        String cacheKey = GeminiResponseCache.key(model, requestBody);
+        String cached = getCachedResponse(cacheKey);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        
+        HttpRequest request = createRequest(":generateContent?", requestBody);
+        AtomicReference<CompletableFuture<String>> currentAttempt = new AtomicReference<>();
         
-        // Send the request
-        try (OutputStream os = connection.getOutputStream()) {
-            byte[] input = requestBody.getBytes(StandardCharsets.UTF_8);
-            os.write(input, 0, input.length);
+        CompletableFuture<String> result = new CompletableFuture<>();
+        sendWithRetries(request, priority, 0, result, currentAttempt);
+        result.whenComplete((text, error) -> {
+            if (error == null) {
+                cacheResponse(cacheKey, text);
+            } else if (result.isCancelled()) {
+                CompletableFuture<String> attempt = currentAttempt.get();
+                if (attempt != null) {
+                    attempt.cancel(true);
+                }
+            }
+        });
+        return result;
+    }
+    
+    /**
+     * Starts an attempt at a request and schedules the next one if it fails with a retryable error
+     * 
+     * @param request The request
+     * @param priority The priority class of the request
+     * @param attempt The number of attempts made before this one
+     * @param result The future to complete with the outcome of the last attempt
+     * @param currentAttempt Holds the attempt in progress, so cancelling the result can reach it
+     */
+    private void sendWithRetries(HttpRequest request, Priority priority, int attempt,
+                                 CompletableFuture<String> result, AtomicReference<CompletableFuture<String>> currentAttempt) {
+        CompletableFuture<String> response = hedgingEnabled ? sendHedgedAsync(request, priority) : sendRequestAsync(request, priority);
+        currentAttempt.set(response);
+        
+        // The caller may have given up while the attempt was being started
+        if (result.isCancelled()) {
+            response.cancel(true);
+            return;
         }
         
-        // Get the response
-        int responseCode = connection.getResponseCode();
+        response.whenComplete((text, error) -> {
+            if (error == null) {
+                result.complete(text);
+                return;
+            }
+            
+            Throwable cause = unwrap(error);
+            if (result.isDone()) {
+                return;
+            }
+            if (attempt < maxRetries && cause instanceof IOException && isRetryable((IOException) cause)) {
+                CompletableFuture.delayedExecutor(getBackoffMillis(attempt), TimeUnit.MILLISECONDS).execute(() -> {
+                    if (!result.isDone()) {
+                        sendWithRetries(request, priority, attempt + 1, result, currentAttempt);
+                    }
+                });
+            } else {
+                result.completeExceptionally(cause);
+            }
+        });
+    }
+    
+    /**
+     * Sends a request and, if it has not answered by the recent p95 latency, sends
+     * it a second time and takes whichever answer comes first. The hedge is skipped
+     * while requests are queueing at the rate limiter, so it never adds to overload.
+     * 
+     * @param request The request
+     * @param priority The priority class of the request
+     * @return A future for the first successful answer, failing only if every request sent fails
+     */
+    private CompletableFuture<String> sendHedgedAsync(HttpRequest request, Priority priority) {
+        CompletableFuture<String> primary = sendRequestAsync(request, priority);
+        long hedgeDelay = latencyTracker.getPercentile(HEDGE_PERCENTILE);
+        if (hedgeDelay < 0) {
+            // Too few samples to know what slow means yet
+            return primary;
+        }
+        
+        CompletableFuture<String> winner = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<String>> backupRef = new AtomicReference<>();
+        AtomicInteger running = new AtomicInteger(1);
+        BiConsumer<String, Throwable> onDone = (text, error) -> {
+            if (error == null) {
+                winner.complete(text);
+            } else if (running.decrementAndGet() == 0) {
+                winner.completeExceptionally(unwrap(error));
+            }
+        };
+        primary.whenComplete(onDone);
+        
+        CompletableFuture.delayedExecutor(hedgeDelay, TimeUnit.MILLISECONDS).execute(() -> {
+            if (winner.isDone() || rateLimiter.getQueueLength() > 0) {
+                return;
+            }
+            
+            running.incrementAndGet();
+            CompletableFuture<String> backup = sendRequestAsync(request, priority);
+            backupRef.set(backup);
+            backup.whenComplete(onDone);
+            if (winner.isDone()) {
+                backup.cancel(true);
+            }
+        });
+        
+        // Stop whichever request lost, or both if the caller gave up
+        winner.whenComplete((text, error) -> {
+            primary.cancel(true);
+            CompletableFuture<String> backup = backupRef.get();
+            if (backup != null) {
+                backup.cancel(true);
+            }
+        });
+        return winner;
+    }
+    
+    /**
+     * Sends one generation request without blocking
+     * 
+     * @param request The request
+     * @param priority The priority class of the request
+     * @return A future for the generated text; cancelling it withdraws or aborts the request
+     */
+    private CompletableFuture<String> sendRequestAsync(HttpRequest request, Priority priority) {
+        CompletableFuture<Void> permit = rateLimiter.acquireAsync(priority);
+        AtomicReference<CompletableFuture<HttpResponse<String>>> exchangeRef = new AtomicReference<>();
+        
+        // A plain future of our own, so cancelling it behaves as documented and reaches the exchange
+        CompletableFuture<String> result = new CompletableFuture<>();
+        permit.thenRun(() -> {
+            if (result.isDone()) {
+                // Cancelled just as the permit was granted
+                rateLimiter.releaseFailure();
+                return;
+            }
+            
+            long start = System.nanoTime();
+            CompletableFuture<HttpResponse<String>> exchange =
+                httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+            exchangeRef.set(exchange);
+            
+            exchange.whenComplete((response, error) -> {
+                releasePermit(response);
+                if (error != null) {
+                    result.completeExceptionally(unwrap(error));
+                    return;
+                }
+                
+                try {
+                    if (response.statusCode() != 200) {
+                        throw new ApiStatusException(response.statusCode(), response.body());
+                    }
+                    result.complete(parseTextFromResponse(new JSONTokener(response.body())));
+                    latencyTracker.record((System.nanoTime() - start) / 1_000_000);
+                } catch (IOException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+            
+            // The request timeout only covers the headers, so also bound the wait for the body
+            CompletableFuture.delayedExecutor(requestTimeout.toMillis() + readTimeoutMillis, TimeUnit.MILLISECONDS).execute(() -> {
+                if (result.completeExceptionally(new HttpTimeoutException("No response received in time"))) {
+                    exchange.cancel(true);
+                }
+            });
+            
+            // The caller may have given up while the request was being sent
+            if (result.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        result.whenComplete((text, error) -> {
+            if (result.isCancelled()) {
+                // Leaves the queue if still waiting; otherwise aborts the request in flight
+                permit.cancel(false);
+                CompletableFuture<HttpResponse<String>> exchange = exchangeRef.get();
+                if (exchange != null) {
+                    exchange.cancel(true);
+                }
+            }
+        });
+        return result;
+    }
+    
+    /**
+     * Generates text using the streaming Gemini API. The response arrives as
+     * server-sent events, each holding the next piece of the text, which is handed
+     * to the listener right away instead of waiting for the whole answer. A failed
+     * stream is retried as long as none of its text has been handed out yet.
+     * A cached response is handed to the listener in one piece.
+     * 
+     * @param prompt The prompt to generate text from
+     * @param onText Receives the generated text in order, one piece at a time
+     * @return The complete generated text
+     * @throws IOException If the API request fails
+     */
+    public String streamText(String prompt, Consumer<String> onText) throws IOException {
+        // Keyed on the same body as a plain request, so both kinds share cache entries
+        String requestBody = createRequestBody(prompt);
+        String cacheKey = GeminiResponseCache.key(model, requestBody);
+        String cached = getCachedResponse(cacheKey);
+        if (cached != null) {
+            onText.accept(cached);
+            return cached;
+        }
+        
+        HttpRequest request = createRequest(":streamGenerateContent?alt=sse&", requestBody);
+        AtomicBoolean started = new AtomicBoolean();
+        Consumer<String> listener = delta -> {
+            started.set(true);
+            onText.accept(delta);
+        };
         
-        // Check if the request was successful
-        if (responseCode == HttpURLConnection.HTTP_OK) {
-            try (BufferedReader br = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
-                String jsonResponse = br.lines().collect(Collectors.joining(System.lineSeparator()));
-                return parseTextFromResponse(jsonResponse);
+        for (int attempt = 0; ; attempt++) {
+            try {
+                String text = sendStreamRequest(request, listener);
+                cacheResponse(cacheKey, text);
+                return text;
+            } catch (IOException e) {
+                // Once text has been shown, a retry would show it twice
+                if (started.get() || attempt >= maxRetries || !isRetryable(e)) {
+                    throw e;
+                }
+                sleepBeforeRetry(attempt);
             }
+        }
+    }
+    
+    /**
+     * Sends one streaming request and reads it to the end
+     * 
+     * @param request The request
+     * @param onText Receives the generated text in order, one piece at a time
+     * @return The complete generated text
+     * @throws IOException If the API request fails
+     */
+    private String sendStreamRequest(HttpRequest request, Consumer<String> onText) throws IOException {
+        // Streams are only used for chat, and hold their in-flight slot until the last event
+        acquirePermit(Priority.INTERACTIVE);
+        HttpResponse<InputStream> response = null;
+        try {
+            response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new IdleTimeoutInputStream(response.body(), readTimeoutMillis), StandardCharsets.UTF_8))) {
+                if (response.statusCode() != 200) {
+                    String error = reader.lines().collect(Collectors.joining(System.lineSeparator()));
+                    throw new ApiStatusException(response.statusCode(), error);
+                }
+                
+                // Each event is a "data:" line with one partial response; other lines are separators
+                StringBuilder text = new StringBuilder();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.startsWith("data:")) {
+                        continue;
+                    }
+                    
+                    String delta = parseDeltaFromEvent(line.substring(5).trim());
+                    if (!delta.isEmpty()) {
+                        text.append(delta);
+                        onText.accept(delta);
+                    }
+                }
+                
+                if (text.length() == 0) {
+                    throw new MalformedResponseException("No text found in streamed response", null);
+                }
+                return text.toString();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("API request was interrupted");
+        } finally {
+            releasePermit(response);
+        }
+    }
+    
+    /**
+     * Changes how failed requests are retried
+     * 
+     * @param maxRetries The number of retries after the first attempt, 0 to disable retries
+     * @param baseDelayMillis The backoff cap for the first retry, doubled for every further retry
+     * @param maxDelayMillis The largest backoff cap
+     */
+    public void setRetryPolicy(int maxRetries, long baseDelayMillis, long maxDelayMillis) {
+        this.maxRetries = maxRetries;
+        this.retryBaseDelayMillis = baseDelayMillis;
+        this.retryMaxDelayMillis = maxDelayMillis;
+    }
+    
+    /**
+     * Turns hedged requests on or off. A hedge sends a second copy of a request that
+     * is slower than the recent p95 latency, trading a few extra calls for a shorter tail.
+     * 
+     * @param hedgingEnabled True to send hedged requests
+     */
+    public void setHedgingEnabled(boolean hedgingEnabled) {
+        this.hedgingEnabled = hedgingEnabled;
+    }
+    
+    /**
+     * Decides whether a failed request is worth sending again. Generation has no side
+     * effects, so any timeout, connection failure, 429 or 5xx response may be retried.
+     * 
+     * @param e The failure
+     * @return True if the request should be retried
+     */
+    private static boolean isRetryable(IOException e) {
+        if (e instanceof ApiStatusException) {
+            int status = ((ApiStatusException) e).getStatusCode();
+            return status == 429 || status == 500 || status == 502 || status == 503 || status == 504;
+        }
+        return !(e instanceof MalformedResponseException) && !(e instanceof InterruptedIOException);
+    }
+    
+    /**
+     * Picks the wait before a retry using full jitter: a random time between zero and
+     * an exponentially growing cap, so clients that failed together do not retry together
+     * 
+     * @param attempt The number of attempts made before the failed one
+     * @return The wait in milliseconds
+     */
+    private long getBackoffMillis(int attempt) {
+        long cap = Math.min(retryMaxDelayMillis, retryBaseDelayMillis << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(Math.max(1, cap) + 1);
+    }
+    
+    /**
+     * Waits before a retry
+     * 
+     * @param attempt The number of attempts made before the failed one
+     * @throws InterruptedIOException If the thread is interrupted while waiting
+     */
+    private void sleepBeforeRetry(int attempt) throws InterruptedIOException {
+        try {
+            Thread.sleep(getBackoffMillis(attempt));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("API request was interrupted");
+        }
+    }
+    
+    /**
+     * Waits for an asynchronous request on the calling thread
+     * 
+     * @param future The request
+     * @return The generated text
+     * @throws IOException If the API request fails
+     */
+    private static String awaitResult(CompletableFuture<String> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("API request was interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("API request failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+    
+    /**
+     * Gets the original failure out of a CompletionException
+     * 
+     * @param error The failure reported by a future
+     * @return The underlying failure
+     */
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+    
+    /**
+     * Waits until the rate limiter lets a request through
+     * 
+     * @param priority The priority class of the request
+     * @throws InterruptedIOException If the thread is interrupted while waiting
+     */
+    private void acquirePermit(Priority priority) throws InterruptedIOException {
+        try {
+            rateLimiter.acquire(priority);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("API request was interrupted while waiting for the rate limiter");
+        }
+    }
+    
+    /**
+     * Hands a permit back to the rate limiter, reporting how the request went
+     * 
+     * @param response The response, or null if none was received
+     */
+    private void releasePermit(HttpResponse<?> response) {
+        if (response == null) {
+            rateLimiter.releaseFailure();
+        } else if (response.statusCode() == 429) {
+            rateLimiter.releaseRateLimited(getRetryAfterMillis(response));
+        } else if (response.statusCode() == 200) {
+            rateLimiter.releaseSuccess();
         } else {
-            try (BufferedReader br = new BufferedReader(new InputStreamReader(connection.getErrorStream(), StandardCharsets.UTF_8))) {
-                String error = br.lines().collect(Collectors.joining(System.lineSeparator()));
-                throw new IOException("API request failed with code " + responseCode + ": " + error);
+            rateLimiter.releaseFailure();
+        }
+    }
+    
+    /**
+     * Reads the Retry-After header of a response, given either in seconds or as an HTTP date
+     * 
+     * @param response The response
+     * @return The time to wait in milliseconds, or 0 if the header is missing or invalid
+     */
+    private static long getRetryAfterMillis(HttpResponse<?> response) {
+        String value = response.headers().firstValue("Retry-After").orElse("").trim();
+        if (value.isEmpty()) {
+            return 0;
+        }
+        
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime time = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(Instant.now(), time).toMillis());
+            } catch (DateTimeParseException ex) {
+                return 0;
+            }
+        }
+    }
+    
+    /**
+     * Creates a request to the Gemini API
+     * 
+     * @param method The API method and the start of the query string, e.g. ":generateContent?"
+     * @param requestBody The JSON request body
+     * @return The request
+     */
+    private HttpRequest createRequest(String method, String requestBody) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + model + method + "key=" + apiKey))
+            .timeout(requestTimeout)
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(requestBody, StandardCharsets.UTF_8))
+            .build();
+    }
+    
+    /**
+     * Looks up a response in the cache
+     * 
+     * @param cacheKey The cache key of the request
+     * @return The cached response, or null on a miss or if caching is off
+     */
+    private String getCachedResponse(String cacheKey) {
+        return responseCache == null ? null : responseCache.get(cacheKey);
+    }
+    
+    /**
+     * Stores a response in the cache, if caching is on
+     * 
+     * @param cacheKey The cache key of the request
+     * @param text The generated text
+     */
+    private void cacheResponse(String cacheKey, String text) {
+        if (responseCache != null) {
+            responseCache.put(cacheKey, text);
+        }
+    }
+    
+    /**
+     * Gets the HTTP client shared by all Gemini clients, creating it on first use
+     * 
+     * @return The shared HTTP client
+     */
+    private static synchronized HttpClient getSharedHttpClient() {
+        if (sharedHttpClient == null) {
+            // The JDK reads its connection pool settings once, before the first client is built
+            setPropertyFromEnvironment("jdk.httpclient.keepalive.timeout", "GEMINI_KEEPALIVE_SECONDS");
+            setPropertyFromEnvironment("jdk.httpclient.connectionPoolSize", "GEMINI_POOL_SIZE");
+            
+            sharedHttpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(getLongSetting("GEMINI_CONNECT_TIMEOUT_MS", DEFAULT_CONNECT_TIMEOUT_MS)))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        }
+        
+        return sharedHttpClient;
+    }
+    
+    /**
+     * Gets the rate limiter shared by all Gemini clients, creating it on first use
+     * 
+     * @return The shared rate limiter
+     */
+    private static synchronized GeminiRateLimiter getSharedRateLimiter() {
+        if (sharedRateLimiter == null) {
+            sharedRateLimiter = new GeminiRateLimiter(
+                getLongSetting("GEMINI_REQUESTS_PER_MINUTE", DEFAULT_REQUESTS_PER_MINUTE),
+                (int) getLongSetting("GEMINI_BURST", DEFAULT_BURST),
+                (int) getLongSetting("GEMINI_MAX_IN_FLIGHT", DEFAULT_MAX_IN_FLIGHT));
+        }
+        
+        return sharedRateLimiter;
+    }
+    
+    /**
+     * Gets the response cache shared by all Gemini clients, creating it on first use
+     * 
+     * @return The shared response cache, or null if caching is turned off
+     */
+    private static synchronized GeminiResponseCache getSharedResponseCache() {
+        if (!sharedResponseCacheCreated) {
+            sharedResponseCacheCreated = true;
+            
+            int entries = (int) getLongSetting("GEMINI_CACHE_ENTRIES", DEFAULT_CACHE_ENTRIES);
+            if (entries > 0) {
+                String folder = System.getenv("GEMINI_CACHE_DIR");
+                sharedResponseCache = new GeminiResponseCache(entries,
+                    getLongSetting("GEMINI_CACHE_TTL_HOURS", DEFAULT_CACHE_TTL_HOURS) * 60 * 60 * 1000,
+                    Paths.get(folder == null ? DEFAULT_CACHE_FOLDER : folder, CACHE_LOG_FILE));
             }
         }
+        
+        return sharedResponseCache;
+    }
+    
+    /**
+     * Reads a numeric setting from an environment variable
+     * 
+     * @param name The name of the environment variable
+     * @param defaultValue The value to use if the variable is not set or not a number
+     * @return The setting
+     */
+    private static long getLongSetting(String name, long defaultValue) {
+        String value = System.getenv(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+    
+    /**
+     * Copies an environment variable into a system property, unless the property is already set
+     * 
+     * @param property The name of the system property
+     * @param variable The name of the environment variable
+     */
+    private static void setPropertyFromEnvironment(String property, String variable) {
+        String value = System.getenv(variable);
+        if (value != null && System.getProperty(property) == null) {
+            System.setProperty(property, value.trim());
+        }
     }
     
     /**
@@ -179,11 +996,11 @@ public class GeminiClient {
     /**
      * Parses the text from the Gemini API response
      * 
-     * @param jsonResponse The JSON response from the API
+     * @param jsonResponse A tokener over the JSON response body from the API
      * @return The generated text
      * @throws IOException If the response cannot be parsed
      */
-    private String parseTextFromResponse(String jsonResponse) throws IOException {
+    private String parseTextFromResponse(JSONTokener jsonResponse) throws IOException {
         try {
             JSONObject response = new JSONObject(jsonResponse);
             
@@ -201,7 +1018,38 @@ public class GeminiClient {
             
             return parts.getJSONObject(0).getString("text");
         } catch (Exception e) {
-            throw new IOException("Failed to parse API response: " + e.getMessage(), e);
+            throw new MalformedResponseException("Failed to parse API response: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Parses the text of one streamed event
+     * 
+     * @param json The JSON payload of the event
+     * @return The text of the event, or an empty string if it carries none
+     * @throws IOException If the event cannot be parsed
+     */
+    private String parseDeltaFromEvent(String json) throws IOException {
+        try {
+            JSONObject event = new JSONObject(json);
+            JSONArray candidates = event.optJSONArray("candidates");
+            if (candidates == null || candidates.length() == 0) {
+                return "";
+            }
+            
+            JSONObject content = candidates.getJSONObject(0).optJSONObject("content");
+            JSONArray parts = content == null ? null : content.optJSONArray("parts");
+            if (parts == null) {
+                return "";
+            }
+            
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < parts.length(); i++) {
+                text.append(parts.getJSONObject(i).optString("text"));
+            }
+            return text.toString();
+        } catch (Exception e) {
+            throw new MalformedResponseException("Failed to parse streamed response: " + e.getMessage(), e);
         }
     }
     
@@ -232,4 +1080,50 @@ public class GeminiClient {
                  .replace("\\t", "\t")
                  .replace("\\\\", "\\");
     }
+    
+    /**
+     * An error response from the API
+     */
+    private static class ApiStatusException extends IOException {
+        private static final long serialVersionUID = 1L;
+        
+        private final int statusCode;
+        
+        /**
+         * Creates a new exception for an error response
+         * 
+         * @param statusCode The HTTP status code
+         * @param body The response body
+         */
+        private ApiStatusException(int statusCode, String body) {
+            super("API request failed with code " + statusCode + ": " + body);
+            this.statusCode = statusCode;
+        }
+        
+        /**
+         * Gets the HTTP status code
+         * 
+         * @return The status code
+         */
+        private int getStatusCode() {
+            return statusCode;
+        }
+    }
+    
+    /**
+     * A response that arrived but could not be understood, which a retry would not fix
+     */
+    private static class MalformedResponseException extends IOException {
+        private static final long serialVersionUID = 1L;
+        
+        /**
+         * Creates a new exception for a response that could not be parsed
+         * 
+         * @param message The error message
+         * @param cause The parse failure, or null
+         */
+        private MalformedResponseException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,288 @@
+package com.learniq;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Paces requests to the Gemini API so a burst of users stays under the quota
+ * instead of running into a storm of 429 errors. A request needs a token from a
+ * token bucket and a free in-flight slot before it is sent. The refill rate adapts
+ * with AIMD: every success raises it a little up to the configured ceiling, and
+ * every 429 halves it and pauses all requests for the server's Retry-After time.
+ * 
+ * Waiting requests are served by priority class first and arrival order second,
+ * so interactive chat goes ahead of background quiz generation.
+ */
+public class GeminiRateLimiter {
+    private static final Logger LOGGER = Logger.getLogger(GeminiRateLimiter.class.getName());
+    private static final double ADDITIVE_INCREASE = 0.05;
+    private static final double MULTIPLICATIVE_DECREASE = 0.5;
+    
+    /**
+     * The priority class of a request
+     */
+    public enum Priority {
+        /** A user is waiting for the answer */
+        INTERACTIVE,
+        /** Work the user has not asked to see yet, such as quiz generation */
+        BACKGROUND
+    }
+    
+    private final double maxRate;
+    private final double minRate;
+    private final double burst;
+    private final int maxInFlight;
+    private final ScheduledExecutorService scheduler;
+    
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>();
+    private double rate;
+    private double tokens;
+    private long lastRefill;
+    private long pausedUntil;
+    private int inFlight;
+    private long sequence;
+    private ScheduledFuture<?> scheduledDispatch;
+    private long scheduledAt;
+    
+    /**
+     * Creates a new rate limiter
+     * 
+     * @param requestsPerMinute The highest request rate to allow; the rate starts here
+     * @param burst The number of requests that may be sent at once after a quiet period
+     * @param maxInFlight The maximum number of requests waiting for a response at the same time
+     */
+    public GeminiRateLimiter(double requestsPerMinute, int burst, int maxInFlight) {
+        this.maxRate = requestsPerMinute / 60_000.0;
+        this.minRate = Math.min(this.maxRate, 1.0 / 60_000.0);
+        this.burst = Math.max(1, burst);
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.rate = this.maxRate;
+        this.tokens = this.burst;
+        this.lastRefill = System.currentTimeMillis();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "gemini-rate-limiter");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Waits for permission to send a request. Every successful call must be
+     * followed by exactly one release.
+     * 
+     * @param priority The priority class of the request
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public void acquire(Priority priority) throws InterruptedException {
+        CompletableFuture<Void> permit = acquireAsync(priority);
+        try {
+            permit.get();
+        } catch (InterruptedException e) {
+            // Give the slot back if it was granted just as we were interrupted
+            if (!permit.cancel(false)) {
+                releaseFailure();
+            }
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Rate limiter permit failed", e.getCause());
+        }
+    }
+    
+    /**
+     * Requests permission to send a request without blocking. Cancelling the
+     * returned future before it completes withdraws the request.
+     * 
+     * @param priority The priority class of the request
+     * @return A future that completes when the request may be sent
+     */
+    public CompletableFuture<Void> acquireAsync(Priority priority) {
+        CompletableFuture<Void> permit = new CompletableFuture<>();
+        Waiter waiter;
+        synchronized (this) {
+            waiter = new Waiter(priority, sequence++, permit);
+            waiters.add(waiter);
+        }
+        
+        // Leave the queue as soon as the request is withdrawn, so getQueueLength only counts real waiters
+        permit.whenComplete((ignored, error) -> {
+            if (error != null) {
+                withdraw(waiter);
+            }
+        });
+        
+        dispatch();
+        return permit;
+    }
+    
+    /**
+     * Releases a permit after a successful response and raises the rate
+     */
+    public void releaseSuccess() {
+        synchronized (this) {
+            inFlight--;
+            rate = Math.min(maxRate, rate + maxRate * ADDITIVE_INCREASE);
+        }
+        dispatch();
+    }
+    
+    /**
+     * Releases a permit after a 429 response, halves the rate and pauses
+     * all requests until the server allows new ones
+     * 
+     * @param retryAfterMillis The Retry-After time from the response, or 0 if there was none
+     */
+    public void releaseRateLimited(long retryAfterMillis) {
+        synchronized (this) {
+            inFlight--;
+            refill(System.currentTimeMillis());
+            rate = Math.max(minRate, rate * MULTIPLICATIVE_DECREASE);
+            tokens = 0;
+            if (retryAfterMillis > 0) {
+                pausedUntil = Math.max(pausedUntil, System.currentTimeMillis() + retryAfterMillis);
+            }
+            LOGGER.info(String.format(Locale.ROOT, "Gemini rate limited; slowing to %.1f requests/minute%s",
+                rate * 60_000, retryAfterMillis > 0 ? " and pausing " + retryAfterMillis + " ms" : ""));
+        }
+        dispatch();
+    }
+    
+    /**
+     * Releases a permit after a request that failed for another reason, leaving the rate unchanged
+     */
+    public void releaseFailure() {
+        synchronized (this) {
+            inFlight--;
+        }
+        dispatch();
+    }
+    
+    /**
+     * Gets the current request rate
+     * 
+     * @return The allowed requests per minute
+     */
+    public synchronized double getRequestsPerMinute() {
+        return rate * 60_000;
+    }
+    
+    /**
+     * Gets the number of requests waiting for permission
+     * 
+     * @return The queue length
+     */
+    public synchronized int getQueueLength() {
+        return waiters.size();
+    }
+    
+    /**
+     * Grants permits to waiting requests while tokens and in-flight slots are
+     * available, and schedules another attempt for when the next token is due
+     */
+    private void dispatch() {
+        List<CompletableFuture<Void>> granted = new ArrayList<>();
+        
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            refill(now);
+            
+            while (!waiters.isEmpty() && inFlight < maxInFlight) {
+                if (waiters.peek().permit.isDone()) {
+                    // Withdrawn by the caller just now; withdraw() would remove it too
+                    waiters.poll();
+                    continue;
+                }
+                
+                long wait = now < pausedUntil ? pausedUntil - now : tokens >= 1.0 ? 0 : (long) Math.ceil((1.0 - tokens) / rate);
+                if (wait > 0) {
+                    scheduleDispatch(now + wait);
+                    break;
+                }
+                
+                tokens -= 1.0;
+                inFlight++;
+                granted.add(waiters.poll().permit);
+            }
+        }
+        
+        // Complete outside the lock, since callers may start their request right here
+        for (CompletableFuture<Void> permit : granted) {
+            if (!permit.complete(null)) {
+                // Withdrawn after it was granted
+                releaseFailure();
+            }
+        }
+    }
+    
+    /**
+     * Removes a withdrawn request from the queue
+     * 
+     * @param waiter The waiter of the request
+     */
+    private synchronized void withdraw(Waiter waiter) {
+        waiters.remove(waiter);
+    }
+    
+    /**
+     * Adds the tokens earned since the last refill. Must hold the lock.
+     * 
+     * @param now The current time in milliseconds
+     */
+    private void refill(long now) {
+        tokens = Math.min(burst, tokens + (now - lastRefill) * rate);
+        lastRefill = now;
+    }
+    
+    /**
+     * Schedules a dispatch, unless one is already due by then. Must hold the lock.
+     * 
+     * @param time When to dispatch, in epoch milliseconds
+     */
+    private void scheduleDispatch(long time) {
+        if (scheduledDispatch != null && !scheduledDispatch.isDone() && scheduledAt <= time) {
+            return;
+        }
+        if (scheduledDispatch != null) {
+            scheduledDispatch.cancel(false);
+        }
+        
+        scheduledAt = time;
+        scheduledDispatch = scheduler.schedule(this::dispatch, time - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * A request waiting for a permit
+     */
+    private static class Waiter implements Comparable<Waiter> {
+        private final Priority priority;
+        private final long sequence;
+        private final CompletableFuture<Void> permit;
+        
+        /**
+         * Creates a new waiter
+         * 
+         * @param priority The priority class of the request
+         * @param sequence The arrival order of the request
+         * @param permit The future to complete when the request may be sent
+         */
+        private Waiter(Priority priority, long sequence, CompletableFuture<Void> permit) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.permit = permit;
+        }
+        
+        @Override
+        public int compareTo(Waiter other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+}
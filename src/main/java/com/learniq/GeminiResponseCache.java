@@ -0,0 +1,507 @@
+package com.learniq;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Content-addressed cache of Gemini responses, keyed by the SHA-256 of the model
+ * and the full request body (generation config and prompt), so an identical
+ * request is answered without calling the API. Recent responses are kept in an
+ * in-memory LRU tier. Every response is also appended to a log file, which is
+ * read back on startup so the cache survives restarts. Both tiers stop serving
+ * a response once it is older than the time to live.
+ * 
+ * Each log record holds the key, the time it was written, the text length, a
+ * CRC32 of the text and the UTF-8 text. A record cut short by a crash is dropped
+ * when the log is opened, and the log is compacted on open once most of it is
+ * expired or superseded.
+ */
+public class GeminiResponseCache {
+    private static final Logger LOGGER = Logger.getLogger(GeminiResponseCache.class.getName());
+    private static final int MAGIC = 0x4C515243; // "LQRC"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int KEY_BYTES = 32;
+    private static final int RECORD_HEADER_BYTES = KEY_BYTES + 8 + 4 + 4;
+    private static final long MIN_COMPACTION_BYTES = 64 * 1024;
+    
+    private final int maxMemoryEntries;
+    private final long ttlMillis;
+    private final Path logFile;
+    private final LinkedHashMap<String, MemoryEntry> memory;
+    private final Map<String, DiskEntry> diskIndex = new HashMap<>();
+    private FileChannel channel;
+    private long logEnd;
+    
+    private long memoryHits;
+    private long diskHits;
+    private long misses;
+    
+    /**
+     * Creates a cache that only keeps responses in memory
+     * 
+     * @param maxMemoryEntries The maximum number of responses kept in memory
+     * @param ttlMillis How long a response stays valid, in milliseconds
+     */
+    public GeminiResponseCache(int maxMemoryEntries, long ttlMillis) {
+        this(maxMemoryEntries, ttlMillis, null);
+    }
+    
+    /**
+     * Creates a cache backed by a log file. If the log cannot be opened the
+     * cache keeps working in memory only.
+     * 
+     * @param maxMemoryEntries The maximum number of responses kept in memory
+     * @param ttlMillis How long a response stays valid, in milliseconds
+     * @param logFile The log file of the disk tier, or null for no disk tier
+     */
+    public GeminiResponseCache(int maxMemoryEntries, long ttlMillis, Path logFile) {
+        this.maxMemoryEntries = maxMemoryEntries;
+        this.ttlMillis = ttlMillis;
+        this.logFile = logFile;
+        
+        // Access order turns the map into an LRU list
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, MemoryEntry> eldest) {
+                return size() > GeminiResponseCache.this.maxMemoryEntries;
+            }
+        };
+        
+        if (logFile != null) {
+            try {
+                openLog();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Response cache log unavailable, caching in memory only: " + e.getMessage(), e);
+                closeLog();
+            }
+        }
+    }
+    
+    /**
+     * Builds the cache key of a request
+     * 
+     * @param model The model the request is sent to
+     * @param requestBody The JSON request body, holding the generation config and prompt
+     * @return The key as a lowercase hex SHA-256
+     */
+    public static String key(String model, String requestBody) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        
+        digest.update(model.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(requestBody.getBytes(StandardCharsets.UTF_8));
+        return bytesToHex(digest.digest());
+    }
+    
+    /**
+     * Gets a cached response, loading it from the log into memory on a memory miss.
+     * The log is read without holding the cache's lock, so a slow disk does not
+     * hold up lookups that memory can answer.
+     * 
+     * @param key The cache key
+     * @return The response, or null on a miss
+     */
+    public String get(String key) {
+        DiskEntry entry;
+        FileChannel log;
+        synchronized (this) {
+            MemoryEntry cached = memory.get(key);
+            if (cached != null && isExpired(cached.createdAt)) {
+                memory.remove(key);
+                cached = null;
+            }
+            if (cached != null) {
+                memoryHits++;
+                LOGGER.fine(() -> "Gemini response cache " + getStats());
+                return cached.response;
+            }
+            
+            entry = diskIndex.get(key);
+            log = channel;
+            if (entry != null && isExpired(entry.createdAt)) {
+                diskIndex.remove(key);
+                entry = null;
+            }
+            if (entry == null || log == null) {
+                misses++;
+                LOGGER.fine(() -> "Gemini response cache " + getStats());
+                return null;
+            }
+        }
+        
+        // Records are never rewritten in place, so the snapshot stays valid while the log grows
+        String response = null;
+        try {
+            response = new String(readText(log, entry), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Error reading response cache log: " + e.getMessage(), e);
+        }
+        
+        synchronized (this) {
+            if (response != null) {
+                // Keep the record's age so the response expires from memory when it does on disk
+                memory.put(key, new MemoryEntry(response, entry.createdAt));
+                diskHits++;
+            } else {
+                misses++;
+            }
+        }
+        
+        LOGGER.fine(() -> "Gemini response cache " + getStats());
+        return response;
+    }
+    
+    /**
+     * Caches a response in memory and appends it to the log. Failures to write
+     * the log are logged and otherwise ignored, since the cache is only an optimization.
+     * 
+     * @param key The cache key
+     * @param response The response to cache
+     */
+    public synchronized void put(String key, String response) {
+        long now = System.currentTimeMillis();
+        memory.put(key, new MemoryEntry(response, now));
+        
+        DiskEntry existing = diskIndex.get(key);
+        if (channel == null || (existing != null && !isExpired(existing.createdAt))) {
+            return;
+        }
+        
+        try {
+            byte[] text = response.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + text.length);
+            record.put(hexToBytes(key)).putLong(now).putInt(text.length).putInt(crc(text)).put(text).flip();
+            
+            long position = logEnd;
+            while (record.hasRemaining()) {
+                channel.write(record, position + record.position());
+            }
+            logEnd = position + RECORD_HEADER_BYTES + text.length;
+            diskIndex.put(key, new DiskEntry(position + RECORD_HEADER_BYTES, text.length, now));
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Error appending to response cache log: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Gets the number of lookups answered from memory
+     * 
+     * @return The memory hit count
+     */
+    public synchronized long getMemoryHitCount() {
+        return memoryHits;
+    }
+    
+    /**
+     * Gets the number of lookups answered from the log
+     * 
+     * @return The disk hit count
+     */
+    public synchronized long getDiskHitCount() {
+        return diskHits;
+    }
+    
+    /**
+     * Gets the number of lookups that found no valid response
+     * 
+     * @return The miss count
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+    
+    /**
+     * Gets the fraction of lookups answered from either tier
+     * 
+     * @return The hit rate between 0 and 1, or 0 before the first lookup
+     */
+    public synchronized double getHitRate() {
+        long lookups = memoryHits + diskHits + misses;
+        return lookups == 0 ? 0.0 : (double) (memoryHits + diskHits) / lookups;
+    }
+    
+    /**
+     * Gets a one-line summary of the cache metrics
+     * 
+     * @return The metrics
+     */
+    public synchronized String getStats() {
+        return String.format(Locale.ROOT, "memory=%d disk=%d memoryHits=%d diskHits=%d misses=%d hitRate=%.3f",
+            memory.size(), diskIndex.size(), memoryHits, diskHits, misses, getHitRate());
+    }
+    
+    /**
+     * Opens the log, creating it if needed, and indexes the records in it
+     * 
+     * @throws IOException If the log cannot be opened or is not a response cache log
+     */
+    private void openLog() throws IOException {
+        Path folder = logFile.toAbsolutePath().getParent();
+        if (folder != null) {
+            Files.createDirectories(folder);
+        }
+        
+        channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            logEnd = HEADER_BYTES;
+            return;
+        }
+        
+        long deadBytes = indexLog();
+        if (deadBytes >= MIN_COMPACTION_BYTES && deadBytes > logEnd - HEADER_BYTES - deadBytes) {
+            compactLog();
+        }
+    }
+    
+    /**
+     * Reads every record of the log into the index, keeping the newest live record
+     * of each key. A truncated or corrupt tail is cut off.
+     * 
+     * @return The number of bytes taken up by expired or superseded records
+     * @throws IOException If the log cannot be read or has an unknown format
+     */
+    private long indexLog() throws IOException {
+        long fileSize = channel.size();
+        long position = HEADER_BYTES;
+        long deadBytes = 0;
+        
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(0))));
+        if (fileSize < HEADER_BYTES || in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Unknown response cache log format: " + logFile);
+        }
+        
+        byte[] keyBytes = new byte[KEY_BYTES];
+        while (position + RECORD_HEADER_BYTES <= fileSize) {
+            try {
+                in.readFully(keyBytes);
+                long createdAt = in.readLong();
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length < 0 || position + RECORD_HEADER_BYTES + length > fileSize) {
+                    break;
+                }
+                
+                byte[] text = new byte[length];
+                in.readFully(text);
+                if (crc(text) != checksum) {
+                    break;
+                }
+                
+                long recordBytes = RECORD_HEADER_BYTES + length;
+                DiskEntry entry = new DiskEntry(position + RECORD_HEADER_BYTES, length, createdAt);
+                if (isExpired(createdAt)) {
+                    deadBytes += recordBytes;
+                } else {
+                    DiskEntry replaced = diskIndex.put(bytesToHex(keyBytes), entry);
+                    if (replaced != null) {
+                        deadBytes += RECORD_HEADER_BYTES + replaced.length;
+                    }
+                }
+                position += recordBytes;
+            } catch (EOFException e) {
+                break;
+            }
+        }
+        
+        if (position < fileSize) {
+            LOGGER.warning("Dropping " + (fileSize - position) + " bytes of incomplete records from " + logFile);
+            channel.truncate(position);
+        }
+        logEnd = position;
+        return deadBytes;
+    }
+    
+    /**
+     * Rewrites the log with only its live records, so it does not grow forever
+     * 
+     * @throws IOException If the log cannot be rewritten
+     */
+    private void compactLog() throws IOException {
+        Path folder = logFile.toAbsolutePath().getParent();
+        Map<String, DiskEntry> compacted = new HashMap<>();
+        long position = HEADER_BYTES;
+        
+        // Write to a temporary file first so a crash never leaves a partial log behind
+        Path tempFile = Files.createTempFile(folder, "responses", ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (Map.Entry<String, DiskEntry> entry : diskIndex.entrySet()) {
+                DiskEntry disk = entry.getValue();
+                byte[] text = readText(channel, disk);
+                out.write(hexToBytes(entry.getKey()));
+                out.writeLong(disk.createdAt);
+                out.writeInt(text.length);
+                out.writeInt(crc(text));
+                out.write(text);
+                
+                compacted.put(entry.getKey(), new DiskEntry(position + RECORD_HEADER_BYTES, text.length, disk.createdAt));
+                position += RECORD_HEADER_BYTES + text.length;
+            }
+        }
+        
+        long before = logEnd;
+        channel.close();
+        try {
+            Files.move(tempFile, logFile, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, logFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+        
+        channel = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        diskIndex.clear();
+        diskIndex.putAll(compacted);
+        logEnd = position;
+        LOGGER.info("Compacted response cache log from " + before + " to " + position + " bytes");
+    }
+    
+    /**
+     * Reads the text of a record. Positional reads do not move the channel, so
+     * this is safe while other threads read or append.
+     * 
+     * @param log The log to read from
+     * @param entry The record
+     * @return The UTF-8 text
+     * @throws IOException If the log cannot be read
+     */
+    private static byte[] readText(FileChannel log, DiskEntry entry) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(entry.length);
+        while (buffer.hasRemaining()) {
+            if (log.read(buffer, entry.textOffset + buffer.position()) < 0) {
+                throw new EOFException("Response cache record runs past the end of the log");
+            }
+        }
+        return buffer.array();
+    }
+    
+    /**
+     * Closes the log after a failure, leaving the cache in memory-only mode
+     */
+    private void closeLog() {
+        diskIndex.clear();
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing more to do, the disk tier is disabled either way
+            }
+            channel = null;
+        }
+    }
+    
+    /**
+     * Checks whether a response is older than the time to live
+     * 
+     * @param createdAt When the response was cached, in epoch milliseconds
+     * @return True if the response has expired
+     */
+    private boolean isExpired(long createdAt) {
+        return createdAt + ttlMillis <= System.currentTimeMillis();
+    }
+    
+    /**
+     * Computes the CRC32 of a record's text
+     * 
+     * @param text The UTF-8 text
+     * @return The checksum
+     */
+    private static int crc(byte[] text) {
+        CRC32 crc = new CRC32();
+        crc.update(text);
+        return (int) crc.getValue();
+    }
+    
+    /**
+     * Converts a hex key to its raw bytes
+     * 
+     * @param hex The key as a lowercase hex string
+     * @return The raw key
+     */
+    private static byte[] hexToBytes(String hex) {
+        return HexFormat.of().parseHex(hex);
+    }
+    
+    /**
+     * Converts a raw key to hex
+     * 
+     * @param bytes The raw key
+     * @return The key as a lowercase hex string
+     */
+    private static String bytesToHex(byte[] bytes) {
+        return HexFormat.of().formatHex(bytes);
+    }
+    
+    /**
+     * The location of a response in the log
+     */
+    private static class DiskEntry {
+        private final long textOffset;
+        private final int length;
+        private final long createdAt;
+        
+        /**
+         * Creates a new index entry
+         * 
+         * @param textOffset The file offset of the response text
+         * @param length The length of the text in bytes
+         * @param createdAt When the record was written, in epoch milliseconds
+         */
+        private DiskEntry(long textOffset, int length, long createdAt) {
+            this.textOffset = textOffset;
+            this.length = length;
+            this.createdAt = createdAt;
+        }
+    }
+    
+    /**
+     * A response held in memory
+     */
+    private static class MemoryEntry {
+        private final String response;
+        private final long createdAt;
+        
+        /**
+         * Creates a new memory entry
+         * 
+         * @param response The response text
+         * @param createdAt When the response was cached, in epoch milliseconds
+         */
+        private MemoryEntry(String response, long createdAt) {
+            this.response = response;
+            this.createdAt = createdAt;
+        }
+    }
+}
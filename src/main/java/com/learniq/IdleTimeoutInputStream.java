@@ -0,0 +1,109 @@
+package com.learniq;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An input stream that gives up when no data arrives for too long. The HTTP
+ * client's request timeout only covers the wait for the response headers, so
+ * without this a server that stalls in the middle of a body blocks the reading
+ * thread forever. When the stream has been idle for the timeout it is closed
+ * from a watchdog thread, which wakes the blocked read with an HttpTimeoutException.
+ */
+public class IdleTimeoutInputStream extends FilterInputStream {
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "gemini-read-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    private final long timeoutMillis;
+    private volatile long lastActivity;
+    private volatile boolean timedOut;
+    private volatile boolean closed;
+    
+    /**
+     * Wraps a stream with an idle timeout
+     * 
+     * @param in The stream to read from
+     * @param timeoutMillis How long a read may wait for data, in milliseconds
+     */
+    public IdleTimeoutInputStream(InputStream in, long timeoutMillis) {
+        super(in);
+        this.timeoutMillis = timeoutMillis;
+        this.lastActivity = System.currentTimeMillis();
+        WATCHDOG.schedule(this::check, timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    @Override
+    public int read() throws IOException {
+        try {
+            int value = super.read();
+            lastActivity = System.currentTimeMillis();
+            return value;
+        } catch (IOException e) {
+            throw translate(e);
+        }
+    }
+    
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        try {
+            int count = super.read(buffer, offset, length);
+            lastActivity = System.currentTimeMillis();
+            return count;
+        } catch (IOException e) {
+            throw translate(e);
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        super.close();
+    }
+    
+    /**
+     * Closes the stream if it has been idle for the timeout, and otherwise
+     * checks again when the timeout would next run out
+     */
+    private void check() {
+        if (closed) {
+            return;
+        }
+        
+        long idle = System.currentTimeMillis() - lastActivity;
+        if (idle < timeoutMillis) {
+            WATCHDOG.schedule(this::check, timeoutMillis - idle, TimeUnit.MILLISECONDS);
+            return;
+        }
+        
+        timedOut = true;
+        try {
+            close();
+        } catch (IOException e) {
+            // The read that was waiting fails either way
+        }
+    }
+    
+    /**
+     * Reports a read that failed because the watchdog closed the stream as a timeout
+     * 
+     * @param e The exception thrown by the read
+     * @return The exception to throw
+     */
+    private IOException translate(IOException e) {
+        if (!timedOut) {
+            return e;
+        }
+        
+        HttpTimeoutException timeout = new HttpTimeoutException("No data received for " + timeoutMillis + " ms");
+        timeout.initCause(e);
+        return timeout;
+    }
+}
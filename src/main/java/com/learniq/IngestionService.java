@@ -0,0 +1,472 @@
+package com.learniq;
+
+import com.learniq.db.Document;
+import com.learniq.retrieval.EmbeddingProvider;
+import com.learniq.retrieval.HashingEmbeddingProvider;
+import com.learniq.retrieval.HnswIndex;
+import com.learniq.retrieval.IndexSegment;
+import com.learniq.retrieval.LexicalIndex;
+import com.learniq.retrieval.MappedVectorIndex;
+import com.learniq.retrieval.VectorSearch;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Extracts, chunks and indexes documents in the background as soon as they are
+ * uploaded, so their chunks and index segment are already on disk when the user
+ * opens them. A document too large for exact vector search also gets an HNSW
+ * graph, built once at ingestion and stored next to its segment. Also keeps each
+ * user's library index up to date as their documents are ingested.
+ */
+public class IngestionService {
+    private static final Logger LOGGER = Logger.getLogger(IngestionService.class.getName());
+    private static final int WORKER_THREADS = 2;
+    private static final int QUEUE_CAPACITY = 64;
+    
+    /** Documents with more chunks than this are searched with HNSW instead of exact vector search */
+    public static final int APPROXIMATE_SEARCH_THRESHOLD = 5000;
+    private static IngestionService instance;
+    
+    /**
+     * The ingestion state of a document
+     */
+    public enum State {
+        QUEUED,
+        PROCESSING,
+        READY,
+        FAILED
+    }
+    
+    /**
+     * Listener for document state changes
+     */
+    public interface StateListener {
+        /**
+         * Called when a document changes state. May be called from a worker thread.
+         * 
+         * @param documentId The ID of the document
+         * @param state The new state
+         */
+        void onStateChanged(String documentId, State state);
+    }
+    
+    private final PdfProcessor pdfProcessor;
+    private final ChunkCache chunkCache;
+    private final SegmentStore segmentStore;
+    private final EmbeddingProvider embeddingProvider;
+    private final double libraryLexicalWeight;
+    private final TfidfVectorizer vectorizer = new TfidfVectorizer();
+    private final ChunkingStrategy chunkingStrategy;
+    private final ThreadPoolExecutor executor;
+    
+    private final Map<String, State> states = new ConcurrentHashMap<>();
+    private final Map<String, Future<DocumentChunks>> jobs = new ConcurrentHashMap<>();
+    // Completed once the user's library has been built; other callers wait for the same build
+    private final Map<String, CompletableFuture<LibraryIndex>> libraries = new ConcurrentHashMap<>();
+    // Documents deleted in this session; an ingestion still running for one must not add it back
+    private final Set<String> removedDocuments = ConcurrentHashMap.newKeySet();
+    private final List<StateListener> listeners = new CopyOnWriteArrayList<>();
+    
+    /**
+     * Creates a new ingestion service
+     * 
+     * @param pdfProcessor The processor used to extract text
+     * @param chunkCache The cache the chunks are stored in
+     * @param segmentStore The store the index segments are kept in
+     * @param embeddingProvider The provider used to store chunk vectors in the segments, or null if
+     *                          retrieval does not use vectors
+     * @param libraryLexicalWeight The weight of the term matches when library results are fused
+     *                             with the vector matches; 0 uses the vector matches alone
+     * @param chunkingStrategy The strategy used to split the text
+     * @param threads The number of worker threads
+     * @param queueCapacity The maximum number of documents waiting to be processed
+     */
+    public IngestionService(PdfProcessor pdfProcessor, ChunkCache chunkCache, SegmentStore segmentStore,
+                            EmbeddingProvider embeddingProvider, double libraryLexicalWeight,
+                            ChunkingStrategy chunkingStrategy, int threads, int queueCapacity) {
+        this.pdfProcessor = pdfProcessor;
+        this.chunkCache = chunkCache;
+        this.segmentStore = segmentStore;
+        this.embeddingProvider = embeddingProvider;
+        this.libraryLexicalWeight = libraryLexicalWeight;
+        this.chunkingStrategy = chunkingStrategy;
+        
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            runnable -> {
+                Thread thread = new Thread(runnable, "ingestion-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            // When the queue is full, ingest on the uploading thread rather than dropping the document
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+    
+    /**
+     * Get the shared ingestion service. Vectors are stored with every segment, and
+     * libraries match by them, when the LEARNIQ_RETRIEVAL environment variable
+     * selects dense or hybrid retrieval.
+     * Each document is extracted by as many threads as LEARNIQ_EXTRACTION_THREADS
+     * says, by default one per processor.
+     * 
+     * @return The ingestion service instance
+     */
+    public static synchronized IngestionService getInstance() {
+        if (instance == null) {
+            String mode = System.getenv("LEARNIQ_RETRIEVAL");
+            EmbeddingProvider embeddingProvider = "dense".equalsIgnoreCase(mode) || "hybrid".equalsIgnoreCase(mode)
+                ? new HashingEmbeddingProvider() : null;
+            int extractionThreads = getIntSetting("LEARNIQ_EXTRACTION_THREADS", Runtime.getRuntime().availableProcessors());
+            instance = new IngestionService(new PdfProcessor(extractionThreads), new ChunkCache(), new SegmentStore(),
+                embeddingProvider, "hybrid".equalsIgnoreCase(mode) ? 0.5 : 0.0, new TextChunker(TextChunker.Boundary.SENTENCE, 1000, 200),
+                WORKER_THREADS, QUEUE_CAPACITY);
+        }
+        
+        return instance;
+    }
+    
+    /**
+     * Queues a document for background ingestion
+     * 
+     * @param documentId The ID of the document
+     * @param ownerId The ID of the user who owns the document
+     * @param title The title of the document
+     * @param file The document file
+     */
+    public void submit(String documentId, String ownerId, String title, File file) {
+        // Register the job before it can start, so it never finishes before it is tracked
+        FutureTask<DocumentChunks> job = new FutureTask<>(() -> ingest(documentId, ownerId, title, file));
+        jobs.put(documentId, job);
+        setState(documentId, State.QUEUED);
+        executor.execute(job);
+    }
+    
+    /**
+     * Gets the provider whose vectors are stored with the index segments
+     * 
+     * @return The embedding provider, or null if segments are stored without vectors
+     */
+    public EmbeddingProvider getEmbeddingProvider() {
+        return embeddingProvider;
+    }
+    
+    /**
+     * Gets the ingestion state of a document
+     * 
+     * @param documentId The ID of the document
+     * @return The state, or null if the document was not submitted in this session
+     */
+    public State getState(String documentId) {
+        return states.get(documentId);
+    }
+    
+    /**
+     * Gets the chunks of a document, waiting for its ingestion job if one is still running
+     * 
+     * @param documentId The ID of the document
+     * @param file The document file
+     * @return The document chunks
+     * @throws IOException If the document cannot be processed
+     */
+    public List<String> getChunks(String documentId, File file) throws IOException {
+        return getDocumentChunks(documentId, file).getChunks();
+    }
+    
+    /**
+     * Gets the chunks of a document with their pages, waiting for its ingestion
+     * job if one is still running
+     * 
+     * @param documentId The ID of the document
+     * @param file The document file
+     * @return The document chunks
+     * @throws IOException If the document cannot be processed
+     */
+    public DocumentChunks getDocumentChunks(String documentId, File file) throws IOException {
+        Future<DocumentChunks> job = jobs.get(documentId);
+        if (job != null) {
+            try {
+                return job.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for document ingestion", e);
+            } catch (ExecutionException e) {
+                // Fall through and retry on this thread
+                LOGGER.log(Level.WARNING, "Background ingestion failed, retrying: " + e.getCause().getMessage());
+            }
+        }
+        
+        return chunkCache.getDocumentChunks(file, chunkingStrategy, pdfProcessor);
+    }
+    
+    /**
+     * Gets the chunks of a file from the cache, extracting them on a miss
+     * 
+     * @param file The document file
+     * @return The document chunks
+     * @throws IOException If the file cannot be processed
+     */
+    public List<String> getChunks(File file) throws IOException {
+        return chunkCache.getChunks(file, chunkingStrategy, pdfProcessor);
+    }
+    
+    /**
+     * Gets the lexical index of a file by mapping its stored segment, building and
+     * storing the segment first if there is none yet
+     * 
+     * @param file The document file
+     * @param embeddingProvider The provider used to store a vector for every chunk, or null if vectors are not needed
+     * @return The index, normally a mapped {@link IndexSegment}
+     * @throws IOException If the file cannot be processed
+     */
+    public LexicalIndex getIndex(File file, EmbeddingProvider embeddingProvider) throws IOException {
+        String contentHash = ChunkCache.hashFile(file);
+        
+        IndexSegment segment = segmentStore.load(contentHash, chunkingStrategy, embeddingProvider);
+        if (segment != null) {
+            return segment;
+        }
+        
+        List<String> chunks = chunkCache.getChunks(file, chunkingStrategy, pdfProcessor);
+        return segmentStore.store(contentHash, chunkingStrategy, vectorizer.buildIndex(chunks), embeddingProvider);
+    }
+    
+    /**
+     * Gets the vector search over a file's chunks. A document with more than
+     * {@link #APPROXIMATE_SEARCH_THRESHOLD} chunks is searched with the HNSW graph
+     * stored next to its segment, which is built and stored first if there is none
+     * yet; smaller ones are searched exactly over the mapped vectors.
+     * 
+     * @param file The document file
+     * @param index The file's index from {@link #getIndex} with the vectors of this service's provider
+     * @return The vector search, or null if the index is not a segment with vectors
+     * @throws IOException If the file cannot be read
+     */
+    public VectorSearch getVectorSearch(File file, LexicalIndex index) throws IOException {
+        if (!(index instanceof IndexSegment) || !((IndexSegment) index).hasVectors()) {
+            return null;
+        }
+        
+        MappedVectorIndex vectors = ((IndexSegment) index).getVectorIndex();
+        if (vectors.size() <= APPROXIMATE_SEARCH_THRESHOLD) {
+            return vectors;
+        }
+        
+        String contentHash = ChunkCache.hashFile(file);
+        HnswIndex graph = segmentStore.loadGraph(contentHash, chunkingStrategy, vectors);
+        if (graph == null) {
+            graph = new HnswIndex(vectors.getDimension());
+            for (int i = 0; i < vectors.size(); i++) {
+                graph.add(vectors.getVector(i));
+            }
+            segmentStore.storeGraph(contentHash, chunkingStrategy, graph);
+        }
+        return graph;
+    }
+    
+    /**
+     * Gets the library index over all documents of a user, building it from the
+     * chunk cache the first time. Documents that cannot be read are left out.
+     * Only the first caller for a user builds the library; later callers for the
+     * same user wait for it, and other users are not held up.
+     * 
+     * @param userId The ID of the user
+     * @return The user's library index
+     */
+    public LibraryIndex getLibrary(String userId) {
+        CompletableFuture<LibraryIndex> build = new CompletableFuture<>();
+        CompletableFuture<LibraryIndex> existing = libraries.putIfAbsent(userId, build);
+        if (existing != null) {
+            return existing.join();
+        }
+        
+        try {
+            LibraryIndex library = new LibraryIndex(new TfidfVectorizer(), embeddingProvider, libraryLexicalWeight);
+            for (Document document : Document.getByUserId(userId)) {
+                if (removedDocuments.contains(document.getId())) {
+                    continue;
+                }
+                
+                try {
+                    File file = new File(document.getFilePath());
+                    DocumentChunks documentChunks = getDocumentChunks(document.getId(), file);
+                    VectorSearch vectors = embeddingProvider == null ? null
+                        : getVectorSearch(file, getIndex(file, embeddingProvider));
+                    addToLibrary(library, document.getId(), document.getTitle(), documentChunks, vectors);
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Leaving document " + document.getId() + " out of the library: " + e.getMessage());
+                }
+            }
+            build.complete(library);
+            
+            // A document deleted during the build found no library to remove it from, so remove it now
+            for (String documentId : removedDocuments) {
+                synchronized (library) {
+                    library.removeDocument(documentId);
+                }
+            }
+            return library;
+        } catch (RuntimeException e) {
+            // Let the next call try again
+            libraries.remove(userId, build);
+            build.completeExceptionally(e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Removes a deleted document from its owner's library
+     * 
+     * @param documentId The ID of the document
+     * @param ownerId The ID of the user who owned the document
+     */
+    public void removeDocument(String documentId, String ownerId) {
+        // Mark the document first, so an ingestion that has not added it yet never will
+        removedDocuments.add(documentId);
+        Future<DocumentChunks> job = jobs.remove(documentId);
+        if (job != null) {
+            // Only stops a job that has not started yet; a running one checks the mark
+            job.cancel(false);
+        }
+        
+        states.remove(documentId);
+        CompletableFuture<LibraryIndex> build = libraries.get(ownerId);
+        LibraryIndex library = build == null ? null : build.getNow(null);
+        if (library != null) {
+            synchronized (library) {
+                library.removeDocument(documentId);
+            }
+        }
+    }
+    
+    /**
+     * Adds a listener for state changes
+     * 
+     * @param listener The listener to add
+     */
+    public void addStateListener(StateListener listener) {
+        listeners.add(listener);
+    }
+    
+    /**
+     * Removes a listener for state changes
+     * 
+     * @param listener The listener to remove
+     */
+    public void removeStateListener(StateListener listener) {
+        listeners.remove(listener);
+    }
+    
+    /**
+     * Runs the ingestion of a single document
+     * 
+     * @param documentId The ID of the document
+     * @param ownerId The ID of the user who owns the document
+     * @param title The title of the document
+     * @param file The document file
+     * @return The document chunks
+     * @throws IOException If the document cannot be processed
+     */
+    private DocumentChunks ingest(String documentId, String ownerId, String title, File file) throws IOException {
+        setState(documentId, State.PROCESSING);
+        
+        try {
+            DocumentChunks documentChunks = chunkCache.getDocumentChunks(file, chunkingStrategy, pdfProcessor);
+            
+            // Write the index segment now, with vectors and any HNSW graph if retrieval needs
+            // them, so opening the document only has to map and read them
+            LexicalIndex index = getIndex(file, embeddingProvider);
+            VectorSearch vectors = embeddingProvider == null ? null : getVectorSearch(file, index);
+            
+            // Users who already searched their library see the new document right away. A library
+            // still being built gets it once the build is done; the build may be waiting for this job.
+            CompletableFuture<LibraryIndex> build = libraries.get(ownerId);
+            if (build != null) {
+                build.thenAccept(library -> addToLibrary(library, documentId, title, documentChunks, vectors));
+            }
+            
+            setState(documentId, State.READY);
+            return documentChunks;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Error ingesting document " + documentId + ": " + e.getMessage(), e);
+            setState(documentId, State.FAILED);
+            throw e;
+        } finally {
+            // The chunks and segment are on disk now; don't keep them in memory
+            jobs.remove(documentId);
+        }
+    }
+    
+    /**
+     * Adds a document to a library unless it has been deleted. The check and the
+     * add are one step, so a deletion cannot slip in between and be undone.
+     * 
+     * @param library The library to add to
+     * @param documentId The ID of the document
+     * @param title The title of the document
+     * @param documentChunks The chunks of the document
+     * @param vectors The search over the document's chunk vectors, or null if it has none
+     */
+    private void addToLibrary(LibraryIndex library, String documentId, String title, DocumentChunks documentChunks,
+                              VectorSearch vectors) {
+        synchronized (library) {
+            if (!removedDocuments.contains(documentId)) {
+                library.addDocument(documentId, title, documentChunks, vectors);
+            }
+        }
+    }
+    
+    /**
+     * Reads a numeric setting from an environment variable
+     * 
+     * @param name The name of the environment variable
+     * @param defaultValue The value to use if the variable is not set or not a number
+     * @return The setting
+     */
+    private static int getIntSetting(String name, int defaultValue) {
+        String value = System.getenv(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+    
+    /**
+     * Updates the state of a document and notifies the listeners
+     * 
+     * @param documentId The ID of the document
+     * @param state The new state
+     */
+    private void setState(String documentId, State state) {
+        if (removedDocuments.contains(documentId)) {
+            // Nobody is interested in a deleted document any more
+            return;
+        }
+        
+        states.put(documentId, state);
+        for (StateListener listener : listeners) {
+            listener.onStateChanged(documentId, state);
+        }
+    }
+}
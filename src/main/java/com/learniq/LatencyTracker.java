@@ -0,0 +1,63 @@
+package com.learniq;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent request latencies in a ring buffer and reports
+ * percentiles over them, so timing decisions follow how the API behaves now
+ * rather than a fixed guess.
+ */
+public class LatencyTracker {
+    private final long[] samples;
+    private final int minSamples;
+    private int count;
+    private int next;
+    
+    /**
+     * Creates a new latency tracker
+     * 
+     * @param capacity The number of recent samples to keep
+     * @param minSamples The number of samples needed before percentiles are reported
+     */
+    public LatencyTracker(int capacity, int minSamples) {
+        this.samples = new long[capacity];
+        this.minSamples = minSamples;
+    }
+    
+    /**
+     * Records the latency of a request, replacing the oldest sample once the buffer is full
+     * 
+     * @param millis The latency in milliseconds
+     */
+    public synchronized void record(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+    }
+    
+    /**
+     * Gets a percentile of the recorded latencies
+     * 
+     * @param percentile The percentile, between 0 and 1 (e.g. 0.95)
+     * @return The latency in milliseconds, or -1 if too few samples have been recorded
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (count < minSamples || count == 0) {
+            return -1;
+        }
+        
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+    
+    /**
+     * Gets the number of recorded samples
+     * 
+     * @return The sample count, at most the capacity
+     */
+    public synchronized int getSampleCount() {
+        return count;
+    }
+}
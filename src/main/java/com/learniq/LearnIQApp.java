@@ -3,6 +3,13 @@ package com.learniq;
 import com.learniq.db.DbUtils;
 import com.learniq.db.Document;
 import com.learniq.db.User;
+import com.learniq.retrieval.DenseRetriever;
+import com.learniq.retrieval.EmbeddingProvider;
+import com.learniq.retrieval.HnswIndex;
+import com.learniq.retrieval.HybridRetriever;
+import com.learniq.retrieval.LexicalIndex;
+import com.learniq.retrieval.Retriever;
+import com.learniq.retrieval.VectorSearch;
 import com.learniq.ui.DashboardPanel;
 import com.learniq.ui.LoginPanel;
 import com.learniq.ui.SignupPanel;
@@ -14,6 +21,8 @@ import java.awt.*;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -23,12 +32,15 @@ import java.util.logging.Logger;
 public class LearnIQApp extends JFrame {
     private static final Logger LOGGER = Logger.getLogger(LearnIQApp.class.getName());
     
-    private final PdfProcessor pdfProcessor = new PdfProcessor();
+    private final IngestionService ingestionService = IngestionService.getInstance();
     private final TfidfVectorizer vectorizer = new TfidfVectorizer();
     private GeminiClient geminiClient;
     private QuizGenerator quizGenerator;
     
     private List<String> textChunks;
+    private Retriever retriever;
+    private String documentKey;
+    private CompletableFuture<List<QuizGenerator.QuizQuestion>> pendingQuiz;
     private String userLevel;
     
     private User currentUser;
@@ -252,11 +264,12 @@ public class LearnIQApp extends JFrame {
             @Override
             protected Void doInBackground() throws Exception {
                 try {
-                    // Extract text from the PDF
-                    String text = pdfProcessor.extractText(pdfFile);
+                    // Load the chunks from the cache, extracting the PDF on a miss
+                    textChunks = ingestionService.getChunks(pdfFile);
+                    documentKey = ChunkCache.hashFile(pdfFile);
                     
-                    // Split the text into chunks
-                    textChunks = pdfProcessor.splitIntoChunks(text, 1000);
+                    // Map the stored index, building it once if the document is new
+                    retriever = createRetriever(pdfFile, textChunks);
                     
                     // Generate and show the quiz
                     SwingUtilities.invokeLater(() -> showQuiz());
@@ -279,12 +292,97 @@ public class LearnIQApp extends JFrame {
     }
     
     /**
-     * Shows the quiz panel
+     * Creates the retriever used to find context for chat questions. Set the
+     * LEARNIQ_RETRIEVAL environment variable to "dense" to match by embeddings
+     * instead of shared terms, or to "hybrid" to fuse both.
+     * 
+     * @param file The document file, used to find its stored index segment
+     * @param chunks The document chunks
+     * @return The retriever
+     * @throws IOException If the document cannot be indexed
+     */
+    private Retriever createRetriever(File file, List<String> chunks) throws IOException {
+        String mode = System.getenv("LEARNIQ_RETRIEVAL");
+        if (!"dense".equalsIgnoreCase(mode) && !"hybrid".equalsIgnoreCase(mode)) {
+            return new LexicalRetriever(vectorizer, ingestionService.getIndex(file, null));
+        }
+        
+        // One segment holds both the terms and the vectors of the document; ingestion already wrote them
+        EmbeddingProvider embeddingProvider = ingestionService.getEmbeddingProvider();
+        LexicalIndex index = ingestionService.getIndex(file, embeddingProvider);
+        Retriever dense = createDenseRetriever(file, index, embeddingProvider, chunks);
+        
+        if ("hybrid".equalsIgnoreCase(mode)) {
+            return new HybridRetriever(new LexicalRetriever(vectorizer, index), dense);
+        }
+        return dense;
+    }
+    
+    /**
+     * Creates a retriever that matches chunks by their embeddings
+     * 
+     * @param file The document file, used to find its stored HNSW graph
+     * @param index The document index, normally a segment with stored vectors
+     * @param embeddingProvider The provider the vectors were made with
+     * @param chunks The document chunks
+     * @return The dense retriever
+     * @throws IOException If the document cannot be read
+     */
+    private Retriever createDenseRetriever(File file, LexicalIndex index, EmbeddingProvider embeddingProvider,
+                                           List<String> chunks) throws IOException {
+        // Exact search over the mapped vectors, or for very large documents the HNSW graph ingestion stored
+        VectorSearch vectors = ingestionService.getVectorSearch(file, index);
+        if (vectors == null) {
+            // The segment could not be stored; embed the chunks in memory
+            return createInMemoryDenseRetriever(embeddingProvider, chunks);
+        }
+        return new DenseRetriever(embeddingProvider, vectors, chunks);
+    }
+    
+    /**
+     * Creates a dense retriever that embeds the chunks in memory
+     * 
+     * @param embeddingProvider The provider used to embed chunks and queries
+     * @param chunks The document chunks
+     * @return The retriever
+     */
+    private Retriever createInMemoryDenseRetriever(EmbeddingProvider embeddingProvider, List<String> chunks) {
+        if (chunks.size() > IngestionService.APPROXIMATE_SEARCH_THRESHOLD) {
+            DenseRetriever dense = new DenseRetriever(embeddingProvider,
+                new HnswIndex(embeddingProvider.getDimension()));
+            dense.addChunks(chunks);
+            return dense;
+        }
+        return new DenseRetriever(embeddingProvider, chunks);
+    }
+    
+    /**
+     * Generates a quiz in the background and shows the quiz panel when it is ready
      */
     private void showQuiz() {
-        try {
-            // Generate the quiz
-            List<QuizGenerator.QuizQuestion> questions = quizGenerator.generateQuiz(textChunks);
+        // Generate the quiz without blocking the event dispatch thread; the loading panel stays up meanwhile
+        CompletableFuture<List<QuizGenerator.QuizQuestion>> quiz = quizGenerator.generateQuizAsync(textChunks);
+        pendingQuiz = quiz;
+        
+        quiz.whenComplete((questions, error) -> SwingUtilities.invokeLater(() -> {
+            // A quiz that was cancelled or replaced by a newer one is no longer wanted
+            if (quiz.isCancelled() || pendingQuiz != quiz) {
+                return;
+            }
+            pendingQuiz = null;
+            
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                LOGGER.log(Level.WARNING, "Error generating the quiz: " + cause.getMessage(), cause);
+                
+                // Show an error message
+                JOptionPane.showMessageDialog(this,
+                    "Error generating the quiz: " + cause.getMessage(),
+                    "Error",
+                    JOptionPane.ERROR_MESSAGE);
+                cardLayout.show(mainPanel, "welcome");
+                return;
+            }
             
             // Create the quiz panel
             QuizPanel quizPanel = new QuizPanel(questions, this::onQuizComplete);
@@ -292,14 +390,7 @@ public class LearnIQApp extends JFrame {
             // Add the quiz panel to the card layout
             mainPanel.add(quizPanel, "quiz");
             cardLayout.show(mainPanel, "quiz");
-        } catch (IOException e) {
-            // Show an error message
-            JOptionPane.showMessageDialog(this,
-                "Error generating the quiz: " + e.getMessage(),
-                "Error",
-                JOptionPane.ERROR_MESSAGE);
-            cardLayout.show(mainPanel, "welcome");
-        }
+        }));
     }
     
     /**
@@ -311,7 +402,7 @@ public class LearnIQApp extends JFrame {
         this.userLevel = userLevel;
         
         // Create the chat panel
-        ChatPanel chatPanel = new ChatPanel(geminiClient, vectorizer, textChunks, userLevel);
+        ChatPanel chatPanel = new ChatPanel(geminiClient, retriever, documentKey, userLevel);
         
         // Add the chat panel to the card layout
         mainPanel.add(chatPanel, "chat");
@@ -350,6 +441,11 @@ public class LearnIQApp extends JFrame {
                     openDocument(document);
                 }
                 
+                @Override
+                public void onLibraryChatRequested() {
+                    openLibraryChat();
+                }
+                
                 @Override
                 public void onLogoutRequested() {
                     logout();
@@ -368,6 +464,11 @@ public class LearnIQApp extends JFrame {
                     openDocument(document);
                 }
                 
+                @Override
+                public void onLibraryChatRequested() {
+                    openLibraryChat();
+                }
+                
                 @Override
                 public void onLogoutRequested() {
                     logout();
@@ -402,11 +503,12 @@ public class LearnIQApp extends JFrame {
                     // Load the file
                     File file = new File(document.getFilePath());
                     
-                    // Extract text from the PDF
-                    String text = pdfProcessor.extractText(file);
+                    // Usually already ingested in the background after upload
+                    textChunks = ingestionService.getChunks(document.getId(), file);
+                    documentKey = ChunkCache.hashFile(file);
                     
-                    // Split the text into chunks
-                    textChunks = pdfProcessor.splitIntoChunks(text, 1000);
+                    // Map the stored index, building it once if the document is new
+                    retriever = createRetriever(file, textChunks);
                     
                     // Generate and show the quiz
                     SwingUtilities.invokeLater(() -> showQuiz());
@@ -428,14 +530,61 @@ public class LearnIQApp extends JFrame {
         worker.execute();
     }
     
+    /**
+     * Opens a chat that answers from all of the current user's documents
+     */
+    private void openLibraryChat() {
+        // Show the loading panel
+        cardLayout.show(mainPanel, "loading");
+        
+        // Load the library index in a background thread
+        SwingWorker<LibraryIndex, Void> worker = new SwingWorker<>() {
+            @Override
+            protected LibraryIndex doInBackground() {
+                return ingestionService.getLibrary(currentUser.getId());
+            }
+            
+            @Override
+            protected void done() {
+                try {
+                    LibraryIndex library = get();
+                    
+                    // Without a quiz for the whole library, use the last assessed level
+                    String level = userLevel != null ? userLevel : "intermediate";
+                    ChatPanel chatPanel = new ChatPanel(geminiClient, library, "library:" + currentUser.getId(), level);
+                    
+                    mainPanel.add(chatPanel, "chat");
+                    cardLayout.show(mainPanel, "chat");
+                } catch (Exception e) {
+                    LOGGER.log(Level.SEVERE, "Error loading library: " + e.getMessage(), e);
+                    JOptionPane.showMessageDialog(LearnIQApp.this,
+                        "Error loading your library: " + e.getMessage(),
+                        "Error",
+                        JOptionPane.ERROR_MESSAGE);
+                    cardLayout.show(mainPanel, "dashboard");
+                }
+            }
+        };
+        
+        worker.execute();
+    }
+    
     /**
      * Logs out the current user
      */
     private void logout() {
+        // Stop waiting for a quiz nobody will take
+        if (pendingQuiz != null) {
+            pendingQuiz.cancel(true);
+            pendingQuiz = null;
+        }
+        
         // Clear the user and document data
         currentUser = null;
         currentDocument = null;
         textChunks = null;
+        retriever = null;
+        documentKey = null;
         userLevel = null;
         
         // Show the login panel
@@ -0,0 +1,46 @@
+package com.learniq;
+
+import com.learniq.retrieval.LexicalIndex;
+import com.learniq.retrieval.Retriever;
+import com.learniq.retrieval.ScoredChunk;
+
+import java.util.List;
+
+/**
+ * Retriever that scores chunks on shared terms with the query using a TfidfVectorizer
+ */
+public class LexicalRetriever implements Retriever {
+    private final TfidfVectorizer vectorizer;
+    private final LexicalIndex index;
+    
+    /**
+     * Creates a lexical retriever over an existing index
+     * 
+     * @param vectorizer The vectorizer used to score chunks
+     * @param index The index to search, in memory or a mapped segment
+     */
+    public LexicalRetriever(TfidfVectorizer vectorizer, LexicalIndex index) {
+        this.vectorizer = vectorizer;
+        this.index = index;
+    }
+    
+    /**
+     * Creates a lexical retriever over the given chunks
+     * 
+     * @param vectorizer The vectorizer used to index and score chunks
+     * @param chunks The chunks to index
+     */
+    public LexicalRetriever(TfidfVectorizer vectorizer, List<String> chunks) {
+        this(vectorizer, vectorizer.buildIndex(chunks));
+    }
+    
+    @Override
+    public List<ScoredChunk> retrieve(String query, int topK) {
+        return vectorizer.search(query, index, topK);
+    }
+    
+    @Override
+    public String getChunk(int chunkId) {
+        return index.getChunk(chunkId);
+    }
+}
@@ -0,0 +1,393 @@
+package com.learniq;
+
+import com.learniq.retrieval.EmbeddingProvider;
+import com.learniq.retrieval.HybridRetriever;
+import com.learniq.retrieval.InvertedIndex;
+import com.learniq.retrieval.RetrievedChunk;
+import com.learniq.retrieval.Retriever;
+import com.learniq.retrieval.ScoredChunk;
+import com.learniq.retrieval.TopKSelector;
+import com.learniq.retrieval.VectorIndex;
+import com.learniq.retrieval.VectorSearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A single lexical index over all documents of one user, so a question can be
+ * answered from the whole library instead of only the open document. Every
+ * chunk remembers the document and page it came from.
+ * 
+ * Documents can be added while the index is being searched. Removed documents
+ * are hidden from results rather than deleted from the index, until they make
+ * up enough of it that the index is rebuilt from the live chunks. Rebuilding
+ * renumbers the chunks.
+ * 
+ * With an embedding provider the library also matches chunks by their vectors.
+ * Each document keeps its own vector search, normally the exact search or HNSW
+ * graph stored with its segment, and a query searches every live document and
+ * merges the results. The vector results are used on their own or fused with
+ * the lexical ones, as {@link HybridRetriever} does for a single document.
+ */
+public class LibraryIndex implements Retriever {
+    // Rebuild once this share of the chunks belongs to removed documents
+    private static final double COMPACTION_THRESHOLD = 0.25;
+    // Candidates fetched from each side before fusing, as in HybridRetriever
+    private static final int CANDIDATE_COUNT = 20;
+    
+    private final TfidfVectorizer vectorizer;
+    private final EmbeddingProvider embeddingProvider;
+    private final double lexicalWeight;
+    private InvertedIndex index = new InvertedIndex();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    // Document slots; a slot is set to null when its document is removed
+    private final List<String> documentIds = new ArrayList<>();
+    private final List<String> documentTitles = new ArrayList<>();
+    private final Map<String, Integer> documentSlots = new HashMap<>();
+    // Per document slot: the search over its chunk vectors and the global ID of its first chunk
+    private final List<VectorSearch> documentVectors = new ArrayList<>();
+    private final List<Integer> documentFirstChunks = new ArrayList<>();
+    private int removedChunks;
+    
+    // Per global chunk ID: the document slot and the start page
+    private int[] chunkDocuments = new int[1024];
+    private int[] chunkPages = new int[1024];
+    
+    /**
+     * Creates an empty library index that matches chunks by their terms only
+     * 
+     * @param vectorizer The vectorizer used to index and score chunks
+     */
+    public LibraryIndex(TfidfVectorizer vectorizer) {
+        this(vectorizer, null, 1.0);
+    }
+    
+    /**
+     * Creates an empty library index
+     * 
+     * @param vectorizer The vectorizer used to index and score chunks
+     * @param embeddingProvider The provider used to embed queries and the chunks of documents
+     *                          added without vectors, or null to match by terms only
+     * @param lexicalWeight The weight of the lexical results between 0 and 1 when they are fused
+     *                      with the vector results; 0 uses the vector results alone
+     */
+    public LibraryIndex(TfidfVectorizer vectorizer, EmbeddingProvider embeddingProvider, double lexicalWeight) {
+        this.vectorizer = vectorizer;
+        this.embeddingProvider = embeddingProvider;
+        this.lexicalWeight = lexicalWeight;
+    }
+    
+    /**
+     * Adds a document to the library, replacing any earlier version of it. Its
+     * chunks are embedded in memory if the library matches by vectors.
+     * 
+     * @param documentId The ID of the document
+     * @param title The title of the document, shown when its chunks are cited
+     * @param documentChunks The chunks of the document
+     */
+    public void addDocument(String documentId, String title, DocumentChunks documentChunks) {
+        addDocument(documentId, title, documentChunks, null);
+    }
+    
+    /**
+     * Adds a document to the library with a search over its chunk vectors,
+     * replacing any earlier version of it
+     * 
+     * @param documentId The ID of the document
+     * @param title The title of the document, shown when its chunks are cited
+     * @param documentChunks The chunks of the document
+     * @param vectors The search over the document's chunk vectors in chunk order, made with the
+     *                library's embedding provider, or null to embed the chunks if needed
+     */
+    public void addDocument(String documentId, String title, DocumentChunks documentChunks, VectorSearch vectors) {
+        if (embeddingProvider == null) {
+            vectors = null;
+        } else if (vectors == null || vectors.size() != documentChunks.size()) {
+            // Embed before taking the lock so searches are not held up
+            VectorIndex embedded = new VectorIndex(embeddingProvider.getDimension());
+            for (String chunk : documentChunks.getChunks()) {
+                embedded.add(embeddingProvider.embed(chunk));
+            }
+            vectors = embedded;
+        }
+        
+        lock.writeLock().lock();
+        try {
+            removeDocumentLocked(documentId);
+            
+            int slot = documentIds.size();
+            documentIds.add(documentId);
+            documentTitles.add(title);
+            documentSlots.put(documentId, slot);
+            documentVectors.add(vectors);
+            documentFirstChunks.add(index.getChunkCount());
+            
+            for (int i = 0; i < documentChunks.size(); i++) {
+                int chunkId = vectorizer.addToIndex(index, documentChunks.getChunks().get(i));
+                if (chunkId == chunkDocuments.length) {
+                    chunkDocuments = Arrays.copyOf(chunkDocuments, chunkId * 2);
+                    chunkPages = Arrays.copyOf(chunkPages, chunkId * 2);
+                }
+                chunkDocuments[chunkId] = slot;
+                chunkPages[chunkId] = documentChunks.getPage(i);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Removes a document from the library
+     * 
+     * @param documentId The ID of the document
+     */
+    public void removeDocument(String documentId) {
+        lock.writeLock().lock();
+        try {
+            removeDocumentLocked(documentId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    @Override
+    public List<ScoredChunk> retrieve(String query, int topK) {
+        lock.readLock().lock();
+        try {
+            return retrieveLocked(query, topK);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Finds the best matching chunks and reads their text and source under the
+     * same read lock, so a compaction cannot renumber the chunks in between
+     * 
+     * @param query The search query
+     * @param topK The number of chunks to return
+     * @return The best chunks in descending score order
+     */
+    @Override
+    public List<RetrievedChunk> retrieveChunks(String query, int topK) {
+        lock.readLock().lock();
+        try {
+            List<RetrievedChunk> chunks = new ArrayList<>();
+            for (ScoredChunk result : retrieveLocked(query, topK)) {
+                int chunkId = result.getChunkId();
+                chunks.add(new RetrievedChunk(chunkId, result.getScore(), index.getChunk(chunkId), getSourceLocked(chunkId)));
+            }
+            return chunks;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    @Override
+    public String getChunk(int chunkId) {
+        lock.readLock().lock();
+        try {
+            return index.getChunk(chunkId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Describes a chunk by the title of its document and the page it starts on
+     * 
+     * @param chunkId The global ID of the chunk
+     * @return The source, e.g. "Biology notes, page 4"
+     */
+    @Override
+    public String getSource(int chunkId) {
+        lock.readLock().lock();
+        try {
+            return getSourceLocked(chunkId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Gets the number of chunks in the library, excluding removed documents
+     * 
+     * @return The chunk count
+     */
+    public int getChunkCount() {
+        lock.readLock().lock();
+        try {
+            return index.getChunkCount() - removedChunks;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Searches the library by terms, by vectors or both, depending on how it was
+     * created. Must hold the read lock.
+     * 
+     * @param query The search query
+     * @param topK The number of results to return
+     * @return The best chunks in descending score order
+     */
+    private List<ScoredChunk> retrieveLocked(String query, int topK) {
+        if (embeddingProvider == null) {
+            return retrieveLexicalLocked(query, topK);
+        }
+        if (lexicalWeight <= 0.0) {
+            return retrieveDenseLocked(query, topK);
+        }
+        
+        int depth = Math.max(topK, CANDIDATE_COUNT);
+        return HybridRetriever.fuse(retrieveLexicalLocked(query, depth), retrieveDenseLocked(query, depth),
+            HybridRetriever.Fusion.RECIPROCAL_RANK, lexicalWeight, topK);
+    }
+    
+    /**
+     * Searches every live document's vectors and merges the results. Removed
+     * documents have no vector search, so they need no filtering. Must hold the
+     * read lock.
+     * 
+     * @param query The search query
+     * @param topK The number of results to return
+     * @return The best chunks in descending score order
+     */
+    private List<ScoredChunk> retrieveDenseLocked(String query, int topK) {
+        float[] vector = embeddingProvider.embed(query);
+        TopKSelector selector = new TopKSelector(topK);
+        for (int slot = 0; slot < documentVectors.size(); slot++) {
+            VectorSearch vectors = documentVectors.get(slot);
+            if (vectors == null) {
+                continue;
+            }
+            
+            int firstChunk = documentFirstChunks.get(slot);
+            for (ScoredChunk result : vectors.search(vector, topK)) {
+                selector.offer(firstChunk + result.getChunkId(), result.getScore());
+            }
+        }
+        return selector.drain();
+    }
+    
+    /**
+     * Searches the lexical index, skipping chunks of removed documents. Must hold the read lock.
+     * 
+     * @param query The search query
+     * @param topK The number of results to return
+     * @return The best chunks in descending score order
+     */
+    private List<ScoredChunk> retrieveLexicalLocked(String query, int topK) {
+        // Fetch enough extra results that removed chunks cannot push out live ones
+        List<ScoredChunk> results = vectorizer.search(query, index, topK + removedChunks);
+        if (removedChunks == 0) {
+            return results;
+        }
+        
+        List<ScoredChunk> live = new ArrayList<>(topK);
+        for (ScoredChunk result : results) {
+            if (documentIds.get(chunkDocuments[result.getChunkId()]) != null) {
+                live.add(result);
+                if (live.size() == topK) {
+                    break;
+                }
+            }
+        }
+        return live;
+    }
+    
+    /**
+     * Describes a chunk by the title of its document and the page it starts on.
+     * Must hold the read lock.
+     * 
+     * @param chunkId The global ID of the chunk
+     * @return The source
+     */
+    private String getSourceLocked(int chunkId) {
+        return documentTitles.get(chunkDocuments[chunkId]) + ", page " + chunkPages[chunkId];
+    }
+    
+    /**
+     * Hides a document's chunks from results, compacting the index once too many
+     * chunks are hidden. Must hold the write lock.
+     * 
+     * @param documentId The ID of the document
+     */
+    private void removeDocumentLocked(String documentId) {
+        Integer slot = documentSlots.remove(documentId);
+        if (slot == null) {
+            return;
+        }
+        
+        documentIds.set(slot, null);
+        documentTitles.set(slot, null);
+        documentVectors.set(slot, null);
+        for (int chunkId = 0; chunkId < index.getChunkCount(); chunkId++) {
+            if (chunkDocuments[chunkId] == slot) {
+                removedChunks++;
+            }
+        }
+        
+        if (removedChunks > index.getChunkCount() * COMPACTION_THRESHOLD) {
+            compactLocked();
+        }
+    }
+    
+    /**
+     * Rebuilds the index from the chunks of the documents that are still in the
+     * library, dropping removed chunks and their effect on term statistics.
+     * Must hold the write lock.
+     */
+    private void compactLocked() {
+        InvertedIndex compacted = new InvertedIndex();
+        int[] documents = new int[chunkDocuments.length];
+        int[] pages = new int[chunkPages.length];
+        List<String> ids = new ArrayList<>();
+        List<String> titles = new ArrayList<>();
+        List<VectorSearch> vectors = new ArrayList<>();
+        List<Integer> firstChunks = new ArrayList<>();
+        int[] slots = new int[documentIds.size()];
+        Arrays.fill(slots, -1);
+        documentSlots.clear();
+        
+        for (int chunkId = 0; chunkId < index.getChunkCount(); chunkId++) {
+            int slot = chunkDocuments[chunkId];
+            if (documentIds.get(slot) == null) {
+                continue;
+            }
+            
+            if (slots[slot] < 0) {
+                // A document's chunks stay contiguous, so its first chunk is the next one
+                slots[slot] = ids.size();
+                ids.add(documentIds.get(slot));
+                titles.add(documentTitles.get(slot));
+                vectors.add(documentVectors.get(slot));
+                firstChunks.add(compacted.getChunkCount());
+                documentSlots.put(documentIds.get(slot), slots[slot]);
+            }
+            
+            int compactedId = vectorizer.addToIndex(compacted, index.getChunk(chunkId));
+            documents[compactedId] = slots[slot];
+            pages[compactedId] = chunkPages[chunkId];
+        }
+        
+        index = compacted;
+        chunkDocuments = documents;
+        chunkPages = pages;
+        documentIds.clear();
+        documentIds.addAll(ids);
+        documentTitles.clear();
+        documentTitles.addAll(titles);
+        documentVectors.clear();
+        documentVectors.addAll(vectors);
+        documentFirstChunks.clear();
+        documentFirstChunks.addAll(firstChunks);
+        removedChunks = 0;
+    }
+}
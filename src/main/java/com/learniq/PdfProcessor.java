@@ -4,15 +4,93 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
 
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.text.PDFTextStripper;
 
 /**
  * Processes PDF files to extract text and split it into manageable chunks.
  * Uses Apache PDFBox library for PDF processing.
+ * 
+ * Large documents can be extracted by several threads, each stripping batches
+ * of pages from its own copy of the document. The copies share the heap budget
+ * of one document, so extracting in parallel spills to scratch files sooner
+ * instead of using more memory.
  */
 public class PdfProcessor {
+    private static final int PAGES_PER_BATCH = 8;
+    // Batches extracted ahead of the chunker per worker, which bounds the page text held in memory
+    private static final int BATCHES_AHEAD_PER_WORKER = 2;
+    private static final long DEFAULT_MAX_MAIN_MEMORY = 64L * 1024 * 1024;
+    private static final long DEFAULT_SCRATCH_FILE_THRESHOLD = 32L * 1024 * 1024;
+    private static final int PROCESSORS = Runtime.getRuntime().availableProcessors();
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+    private static final ExecutorService SHARED_EXECUTOR = Executors.newFixedThreadPool(PROCESSORS, runnable -> {
+        Thread thread = new Thread(runnable, "pdf-extraction-" + THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    private final long maxMainMemoryBytes;
+    private final long scratchFileThreshold;
+    private final File tempDir;
+    private final int extractionThreads;
+    
+    /**
+     * Creates a new PdfProcessor that keeps small documents in memory and
+     * spills large ones to a scratch file in the system temp folder
+     */
+    public PdfProcessor() {
+        this(DEFAULT_MAX_MAIN_MEMORY, DEFAULT_SCRATCH_FILE_THRESHOLD, null);
+    }
+    
+    /**
+     * Creates a new PdfProcessor with the default memory limits
+     * 
+     * @param extractionThreads The number of threads {@link #extractChunks} uses for one document,
+     *                          at most the number of processors
+     */
+    public PdfProcessor(int extractionThreads) {
+        this(DEFAULT_MAX_MAIN_MEMORY, DEFAULT_SCRATCH_FILE_THRESHOLD, null, extractionThreads);
+    }
+    
+    /**
+     * Creates a new PdfProcessor with custom memory limits that extracts on the calling thread
+     * 
+     * @param maxMainMemoryBytes The maximum heap used to buffer a large document before spilling to disk
+     * @param scratchFileThreshold Files larger than this many bytes are loaded with scratch file spillover
+     * @param tempDir The folder for scratch files, or null for the system temp folder
+     */
+    public PdfProcessor(long maxMainMemoryBytes, long scratchFileThreshold, File tempDir) {
+        this(maxMainMemoryBytes, scratchFileThreshold, tempDir, 1);
+    }
+    
+    /**
+     * Creates a new PdfProcessor with custom memory limits
+     * 
+     * @param maxMainMemoryBytes The maximum heap used to buffer a large document before spilling to disk,
+     *                           shared by all threads extracting it
+     * @param scratchFileThreshold Files larger than this many bytes are loaded with scratch file spillover
+     * @param tempDir The folder for scratch files, or null for the system temp folder
+     * @param extractionThreads The number of threads {@link #extractChunks} uses for one document,
+     *                          at most the number of processors
+     */
+    public PdfProcessor(long maxMainMemoryBytes, long scratchFileThreshold, File tempDir, int extractionThreads) {
+        this.maxMainMemoryBytes = maxMainMemoryBytes;
+        this.scratchFileThreshold = scratchFileThreshold;
+        this.tempDir = tempDir;
+        this.extractionThreads = Math.max(1, Math.min(extractionThreads, PROCESSORS));
+    }
     
     /**
      * Extracts text from a PDF file
@@ -26,43 +104,273 @@ public class PdfProcessor {
             throw new IOException("File not found: " + pdfFile.getAbsolutePath());
         }
         
-        try (PDDocument document = PDDocument.load(pdfFile)) {
+        try (PDDocument document = loadDocument(pdfFile, maxMainMemoryBytes)) {
             PDFTextStripper stripper = new PDFTextStripper();
             return stripper.getText(document);
         }
     }
     
     /**
-     * Splits text into chunks of approximately the specified size
+     * Extracts text from a PDF file using several threads. Batches of pages are
+     * stripped concurrently and joined back in page order.
      * 
-     * @param text The text to split
-     * @param chunkSize The approximate size of each chunk
-     * @return A list of text chunks
+     * @param pdfFile The PDF file to process
+     * @param threadCount The number of worker threads to use, at most the number of processors
+     * @return The extracted text
+     * @throws IOException If the file cannot be read
      */
-    public List<String> splitIntoChunks(String text, int chunkSize) {
-        String[] words = text.split("\\s+");
-        List<String> chunks = new ArrayList<>();
+    public String extractTextParallel(File pdfFile, int threadCount) throws IOException {
+        if (threadCount <= 1) {
+            return extractText(pdfFile);
+        }
         
-        StringBuilder currentChunk = new StringBuilder();
-        int currentLength = 0;
+        StringBuilder text = new StringBuilder();
+        extractPages(pdfFile, threadCount, (pageText, page) -> text.append(pageText));
+        return text.toString();
+    }
+    
+    /**
+     * Loads a PDF document, choosing the buffering mode from the file size.
+     * Small files are read fully into memory; larger ones are capped at the
+     * given heap budget and the rest is kept in a scratch file.
+     * 
+     * @param pdfFile The PDF file to load
+     * @param memoryBudget The maximum heap this copy of the document may use for buffering
+     * @return The loaded document
+     * @throws IOException If the file cannot be read
+     */
+    private PDDocument loadDocument(File pdfFile, long memoryBudget) throws IOException {
+        if (pdfFile.length() <= scratchFileThreshold && pdfFile.length() <= memoryBudget) {
+            return PDDocument.load(pdfFile, MemoryUsageSetting.setupMainMemoryOnly());
+        }
+        
+        MemoryUsageSetting memoryUsage = MemoryUsageSetting.setupMixed(memoryBudget);
+        if (tempDir != null) {
+            memoryUsage.setTempDir(tempDir);
+        }
+        return PDDocument.load(pdfFile, memoryUsage);
+    }
+    
+    /**
+     * Extracts the text of every page and hands it to the consumer in page order.
+     * Small documents and a thread count of 1 are handled on the calling thread.
+     * Otherwise workers on the shared pool each load their own copy of the
+     * document, since PDDocument is not thread-safe, and claim batches of pages
+     * in order. Workers stay a few batches ahead of the consumer at most, so only
+     * those batches are held in memory rather than the whole text.
+     * 
+     * @param pdfFile The PDF file to process
+     * @param threadCount The number of worker threads to use, at most the number of processors
+     * @param consumer Receives the text of each page on the calling thread
+     * @throws IOException If the file cannot be read
+     */
+    private void extractPages(File pdfFile, int threadCount, PageTextConsumer consumer) throws IOException {
+        if (!pdfFile.exists()) {
+            throw new IOException("File not found: " + pdfFile.getAbsolutePath());
+        }
         
-        for (String word : words) {
-            int wordLength = word.length() + 1; // +1 for the space
-            currentLength += wordLength;
-            currentChunk.append(word).append(" ");
+        int pageCount;
+        try (PDDocument document = loadDocument(pdfFile, maxMainMemoryBytes)) {
+            pageCount = document.getNumberOfPages();
             
-            if (currentLength >= chunkSize) {
-                chunks.add(currentChunk.toString().trim());
-                currentChunk = new StringBuilder();
-                currentLength = 0;
+            // Small documents are not worth the cost of loading them once per thread
+            if (Math.min(threadCount, PROCESSORS) <= 1 || pageCount <= PAGES_PER_BATCH) {
+                PDFTextStripper stripper = new PDFTextStripper();
+                for (int page = 1; page <= pageCount; page++) {
+                    stripper.setStartPage(page);
+                    stripper.setEndPage(page);
+                    consumer.accept(stripper.getText(document), page);
+                }
+                return;
             }
         }
         
-        // Add the last chunk if it contains anything
-        if (currentChunk.length() > 0) {
-            chunks.add(currentChunk.toString().trim());
+        int batchCount = (pageCount + PAGES_PER_BATCH - 1) / PAGES_PER_BATCH;
+        // More workers than pool threads would only queue up behind the others
+        int workers = Math.min(Math.min(threadCount, PROCESSORS), batchCount);
+        long workerMemoryBudget = maxMainMemoryBytes / workers;
+        
+        // A consumed batch is cleared, so its text can be collected
+        AtomicReferenceArray<CompletableFuture<List<String>>> batches = new AtomicReferenceArray<>(batchCount);
+        for (int i = 0; i < batchCount; i++) {
+            batches.set(i, new CompletableFuture<>());
+        }
+        AtomicInteger nextBatch = new AtomicInteger();
+        Semaphore window = new Semaphore(workers * BATCHES_AHEAD_PER_WORKER);
+        AtomicBoolean stopped = new AtomicBoolean();
+        
+        for (int w = 0; w < workers; w++) {
+            SHARED_EXECUTOR.execute(() -> {
+                if (stopped.get()) {
+                    // Queued behind other documents until this one was already finished or failed
+                    return;
+                }
+                
+                try (PDDocument document = loadDocument(pdfFile, workerMemoryBudget)) {
+                    PDFTextStripper stripper = new PDFTextStripper();
+                    while (true) {
+                        window.acquire();
+                        int batch = nextBatch.getAndIncrement();
+                        if (batch >= batchCount || stopped.get()) {
+                            return;
+                        }
+                        
+                        List<String> pageTexts = new ArrayList<>(PAGES_PER_BATCH);
+                        int firstPage = batch * PAGES_PER_BATCH + 1;
+                        for (int page = firstPage; page <= Math.min(firstPage + PAGES_PER_BATCH - 1, pageCount); page++) {
+                            stripper.setStartPage(page);
+                            stripper.setEndPage(page);
+                            pageTexts.add(stripper.getText(document));
+                        }
+                        batches.get(batch).complete(pageTexts);
+                    }
+                } catch (IOException | RuntimeException | InterruptedException e) {
+                    // Fail every batch this worker might have been needed for; completed ones are unaffected
+                    for (int i = 0; i < batchCount; i++) {
+                        CompletableFuture<List<String>> batch = batches.get(i);
+                        if (batch != null) {
+                            batch.completeExceptionally(e);
+                        }
+                    }
+                }
+            });
         }
         
-        return chunks;
+        try {
+            for (int batch = 0; batch < batchCount; batch++) {
+                List<String> pageTexts = batches.get(batch).get();
+                batches.set(batch, null);
+                window.release();
+                for (int i = 0; i < pageTexts.size(); i++) {
+                    consumer.accept(pageTexts.get(i), batch * PAGES_PER_BATCH + 1 + i);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Text extraction was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to extract text: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            // Let workers waiting for the window see the stop and give their threads back
+            stopped.set(true);
+            window.release(workers);
+        }
+    }
+    
+    /**
+     * Extracts text from a PDF file one page at a time and hands each chunk to
+     * the consumer as soon as it is complete, so the whole document text never
+     * has to be held in memory at once
+     * 
+     * @param pdfFile The PDF file to process
+     * @param chunkSize The approximate size of each chunk
+     * @param consumer Receives the chunks in document order
+     * @throws IOException If the file cannot be read
+     */
+    public void extractChunks(File pdfFile, int chunkSize, Consumer<String> consumer) throws IOException {
+        extractChunks(pdfFile, new TextChunker(chunkSize), consumer);
+    }
+    
+    /**
+     * Extracts text from a PDF file one page at a time and hands each chunk to
+     * the consumer as soon as it is complete
+     * 
+     * @param pdfFile The PDF file to process
+     * @param strategy The chunking strategy to use
+     * @param consumer Receives the chunks in document order
+     * @throws IOException If the file cannot be read
+     */
+    public void extractChunks(File pdfFile, ChunkingStrategy strategy, Consumer<String> consumer) throws IOException {
+        extractChunks(pdfFile, strategy, (chunk, page) -> consumer.accept(chunk));
+    }
+    
+    /**
+     * Extracts text from a PDF file one page at a time and hands each chunk to
+     * the consumer as soon as it is complete, together with the page it starts on.
+     * With more than one extraction thread, pages of large documents are
+     * extracted ahead in parallel; the chunks and the order they arrive in are
+     * the same either way.
+     * 
+     * @param pdfFile The PDF file to process
+     * @param strategy The chunking strategy to use
+     * @param consumer Receives the chunks and their start pages in document order
+     * @throws IOException If the file cannot be read
+     */
+    public void extractChunks(File pdfFile, ChunkingStrategy strategy, PageChunkConsumer consumer) throws IOException {
+        // Text after the last full chunk is carried over into the next page
+        String[] pending = {""};
+        int[] pendingPage = {1};
+        
+        // Pages can be extracted in parallel, but are chunked in order on this thread
+        extractPages(pdfFile, extractionThreads, (pageText, page) -> {
+            List<String> chunks = strategy.split(pending[0].isEmpty() ? pageText : pending[0] + "\n" + pageText);
+            if (chunks.isEmpty()) {
+                pending[0] = "";
+                return;
+            }
+            
+            // Only the first chunk can start in the text carried over from an earlier page
+            int firstPage = pending[0].isEmpty() ? page : pendingPage[0];
+            for (int i = 0; i < chunks.size() - 1; i++) {
+                consumer.accept(chunks.get(i), i == 0 ? firstPage : page);
+            }
+            pending[0] = chunks.get(chunks.size() - 1);
+            pendingPage[0] = chunks.size() == 1 ? firstPage : page;
+        });
+        
+        if (!pending[0].isEmpty()) {
+            consumer.accept(pending[0], pendingPage[0]);
+        }
+    }
+    
+    /**
+     * Splits text into chunks of approximately the specified size, cutting at any word
+     * 
+     * @param text The text to split
+     * @param chunkSize The approximate size of each chunk
+     * @return A list of text chunks
+     */
+    public List<String> splitIntoChunks(CharSequence text, int chunkSize) {
+        return splitIntoChunks(text, new TextChunker(chunkSize));
+    }
+    
+    /**
+     * Splits text into chunks using the given strategy
+     * 
+     * @param text The text to split
+     * @param strategy The chunking strategy to use
+     * @return A list of text chunks
+     */
+    public List<String> splitIntoChunks(CharSequence text, ChunkingStrategy strategy) {
+        return strategy.split(text);
+    }
+    
+    /**
+     * Receives chunks together with the page they start on
+     */
+    public interface PageChunkConsumer {
+        /**
+         * Called for every chunk in document order
+         * 
+         * @param chunk The chunk text
+         * @param page The 1-based page the chunk starts on
+         */
+        void accept(String chunk, int page);
+    }
+    
+    /**
+     * Receives the text of each page
+     */
+    private interface PageTextConsumer {
+        /**
+         * Called for every page in order
+         * 
+         * @param pageText The text of the page
+         * @param page The 1-based page number
+         */
+        void accept(String pageText, int page);
     }
 }
\ No newline at end of file
@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -43,6 +44,26 @@ public class QuizGenerator {
         return parseQuestions(quizText);
     }
     
+    /**
+     * Generates a quiz from the provided text chunks without blocking the calling thread
+     * 
+     * @param chunks The text chunks to generate questions from
+     * @return A future for the quiz questions; cancelling it aborts the request
+     */
+    public CompletableFuture<List<QuizQuestion>> generateQuizAsync(List<String> chunks) {
+        List<String> sampleChunks = getRandomSample(chunks, Math.min(3, chunks.size()));
+        String context = String.join("\n\n", sampleChunks);
+        
+        CompletableFuture<String> request = geminiClient.generateQuizAsync(context);
+        CompletableFuture<List<QuizQuestion>> quiz = request.thenApply(this::parseQuestions);
+        quiz.whenComplete((questions, error) -> {
+            if (quiz.isCancelled()) {
+                request.cancel(true);
+            }
+        });
+        return quiz;
+    }
+    
     /**
      * Evaluates the user's quiz results to determine their knowledge level
      * 
@@ -0,0 +1,201 @@
+package com.learniq;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * In-memory cache of chat responses, so a question that was already answered
+ * for the same document, level and context is answered without calling Gemini.
+ * Entries are evicted least recently used first once the cache is full, and
+ * expire after a fixed time so answers do not live forever.
+ */
+public class ResponseCache {
+    private static final Logger LOGGER = Logger.getLogger(ResponseCache.class.getName());
+    private static final int DEFAULT_MAX_ENTRIES = 1000;
+    private static final long DEFAULT_TTL_MILLIS = 24L * 60 * 60 * 1000;
+    private static ResponseCache instance;
+    
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final LinkedHashMap<String, Entry> entries;
+    
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+    
+    /**
+     * Creates a new response cache
+     * 
+     * @param maxEntries The maximum number of cached responses
+     * @param ttlMillis How long a response stays valid, in milliseconds
+     */
+    public ResponseCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        
+        // Access order turns the map into an LRU list
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > ResponseCache.this.maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+    
+    /**
+     * Get the shared response cache
+     * 
+     * @return The response cache instance
+     */
+    public static synchronized ResponseCache getInstance() {
+        if (instance == null) {
+            instance = new ResponseCache(DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS);
+        }
+        
+        return instance;
+    }
+    
+    /**
+     * Builds the cache key of a question
+     * 
+     * @param documentKey Identifies the document or library the question is about
+     * @param question The question as the user typed it
+     * @param userLevel The user's skill level
+     * @param context The retrieved context sent with the question. It is keyed by its
+     *        SHA-256 rather than by chunk IDs, which change when a library is compacted.
+     * @return The cache key
+     */
+    public static String key(String documentKey, String question, String userLevel, String context) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        
+        StringBuilder key = new StringBuilder()
+            .append(documentKey).append('\u0000')
+            .append(userLevel).append('\u0000')
+            .append(normalizeQuestion(question)).append('\u0000');
+        for (byte b : digest.digest(context.getBytes(StandardCharsets.UTF_8))) {
+            key.append(String.format("%02x", b));
+        }
+        return key.toString();
+    }
+    
+    /**
+     * Gets a cached response
+     * 
+     * @param key The cache key
+     * @return The response, or null on a miss
+     */
+    public synchronized String get(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expiresAt <= System.currentTimeMillis()) {
+            entries.remove(key);
+            expirations++;
+            entry = null;
+        }
+        
+        if (entry == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        LOGGER.fine(() -> "Response cache " + getStats());
+        return entry == null ? null : entry.response;
+    }
+    
+    /**
+     * Caches a response
+     * 
+     * @param key The cache key
+     * @param response The response to cache
+     */
+    public synchronized void put(String key, String response) {
+        entries.put(key, new Entry(response, System.currentTimeMillis() + ttlMillis));
+    }
+    
+    /**
+     * Gets the number of lookups that found a response
+     * 
+     * @return The hit count
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+    
+    /**
+     * Gets the number of lookups that found no valid response
+     * 
+     * @return The miss count
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+    
+    /**
+     * Gets the fraction of lookups that found a response
+     * 
+     * @return The hit rate between 0 and 1, or 0 before the first lookup
+     */
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+    
+    /**
+     * Gets a one-line summary of the cache metrics
+     * 
+     * @return The metrics
+     */
+    public synchronized String getStats() {
+        return String.format(Locale.ROOT, "size=%d hits=%d misses=%d hitRate=%.3f evictions=%d expirations=%d",
+            entries.size(), hits, misses, getHitRate(), evictions, expirations);
+    }
+    
+    /**
+     * Normalizes a question so trivially different spellings share a cache entry:
+     * lowercase, single spaces, and no trailing punctuation
+     * 
+     * @param question The question
+     * @return The normalized question
+     */
+    static String normalizeQuestion(String question) {
+        String normalized = question.toLowerCase(Locale.ROOT).trim().replaceAll("\\s+", " ");
+        int end = normalized.length();
+        while (end > 0 && "?!.".indexOf(normalized.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        return normalized.substring(0, end).trim();
+    }
+    
+    /**
+     * A cached response and its expiry time
+     */
+    private static class Entry {
+        private final String response;
+        private final long expiresAt;
+        
+        /**
+         * Creates a new entry
+         * 
+         * @param response The response
+         * @param expiresAt When the entry expires, in epoch milliseconds
+         */
+        private Entry(String response, long expiresAt) {
+            this.response = response;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
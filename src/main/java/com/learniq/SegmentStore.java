@@ -0,0 +1,158 @@
+package com.learniq;
+
+import com.learniq.retrieval.EmbeddingProvider;
+import com.learniq.retrieval.HnswIndex;
+import com.learniq.retrieval.IndexSegment;
+import com.learniq.retrieval.InvertedIndex;
+import com.learniq.retrieval.LexicalIndex;
+import com.learniq.retrieval.MappedVectorIndex;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * On-disk store of memory-mapped index segments, one per document, keyed like
+ * the {@link ChunkCache} by the SHA-256 of the file contents and the chunking
+ * strategy. After a restart a document's index is opened by mapping its
+ * segment instead of tokenizing every chunk again. The HNSW graph of a large
+ * document is kept in a second file next to its segment.
+ */
+public class SegmentStore {
+    private static final Logger LOGGER = Logger.getLogger(SegmentStore.class.getName());
+    private static final String STORE_FOLDER = "index_cache";
+    
+    private final Path storeDir;
+    
+    /**
+     * Creates a store in the default index_cache folder
+     */
+    public SegmentStore() {
+        this(Paths.get(STORE_FOLDER));
+    }
+    
+    /**
+     * Creates a store in the given folder
+     * 
+     * @param storeDir The folder to store segments in
+     */
+    public SegmentStore(Path storeDir) {
+        this.storeDir = storeDir;
+    }
+    
+    /**
+     * Opens the segment of a document
+     * 
+     * @param contentHash The SHA-256 of the file contents
+     * @param strategy The chunking strategy the index was built with
+     * @param embeddingProvider The provider the stored vectors must match, or null if vectors are not needed
+     * @return The mapped segment, or null if there is no usable segment
+     */
+    public IndexSegment load(String contentHash, ChunkingStrategy strategy, EmbeddingProvider embeddingProvider) {
+        Path segmentFile = segmentPath(contentHash, strategy);
+        if (!Files.exists(segmentFile)) {
+            return null;
+        }
+        
+        try {
+            IndexSegment segment = IndexSegment.open(segmentFile);
+            if (embeddingProvider != null && !embeddingProvider.getId().equals(segment.getEmbeddingProviderId())) {
+                // Written without vectors or by another provider; the caller rebuilds it
+                return null;
+            }
+            return segment;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Error opening index segment: " + e.getMessage(), e);
+            return null;
+        }
+    }
+    
+    /**
+     * Writes the segment of a document and maps it. Write failures are logged
+     * and the in-memory index is returned instead, since the store is only an
+     * optimization.
+     * 
+     * @param contentHash The SHA-256 of the file contents
+     * @param strategy The chunking strategy the index was built with
+     * @param index The index to store
+     * @param embeddingProvider The provider used to store chunk vectors, or null for no vectors
+     * @return The mapped segment, or the given index if it could not be stored
+     */
+    public LexicalIndex store(String contentHash, ChunkingStrategy strategy, InvertedIndex index,
+                              EmbeddingProvider embeddingProvider) {
+        Path segmentFile = segmentPath(contentHash, strategy);
+        
+        try {
+            // A graph built over the old segment's vectors does not match the new ones
+            Files.deleteIfExists(graphPath(contentHash, strategy));
+            IndexSegment.write(index, embeddingProvider, segmentFile);
+            return IndexSegment.open(segmentFile);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Error writing index segment: " + e.getMessage(), e);
+            return index;
+        }
+    }
+    
+    /**
+     * Reads the HNSW graph stored next to a document's segment
+     * 
+     * @param contentHash The SHA-256 of the file contents
+     * @param strategy The chunking strategy the index was built with
+     * @param vectors The vectors of the document's segment
+     * @return The graph, or null if there is no usable graph
+     */
+    public HnswIndex loadGraph(String contentHash, ChunkingStrategy strategy, MappedVectorIndex vectors) {
+        Path graphFile = graphPath(contentHash, strategy);
+        if (!Files.exists(graphFile)) {
+            return null;
+        }
+        
+        try {
+            return HnswIndex.read(graphFile, vectors);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Error reading HNSW graph: " + e.getMessage(), e);
+            return null;
+        }
+    }
+    
+    /**
+     * Writes the HNSW graph of a document next to its segment. Write failures are
+     * logged and otherwise ignored; the graph is built again next time.
+     * 
+     * @param contentHash The SHA-256 of the file contents
+     * @param strategy The chunking strategy the index was built with
+     * @param graph The graph, built over the vectors of the document's segment
+     */
+    public void storeGraph(String contentHash, ChunkingStrategy strategy, HnswIndex graph) {
+        try {
+            graph.write(graphPath(contentHash, strategy));
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Error writing HNSW graph: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Gets the path of a segment
+     * 
+     * @param contentHash The SHA-256 of the file contents
+     * @param strategy The chunking strategy
+     * @return The segment path
+     */
+    private Path segmentPath(String contentHash, ChunkingStrategy strategy) {
+        return storeDir.resolve(contentHash + "_" + strategy.getId() + ".segment");
+    }
+    
+    /**
+     * Gets the path of the HNSW graph stored next to a segment
+     * 
+     * @param contentHash The SHA-256 of the file contents
+     * @param strategy The chunking strategy
+     * @return The graph path
+     */
+    private Path graphPath(String contentHash, ChunkingStrategy strategy) {
+        return storeDir.resolve(contentHash + "_" + strategy.getId() + ".hnsw");
+    }
+}
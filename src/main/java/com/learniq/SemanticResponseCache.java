@@ -0,0 +1,378 @@
+package com.learniq;
+
+import com.learniq.retrieval.Tokenizer;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+/**
+ * Cache of chat responses that also matches reworded questions, such as
+ * "what is osmosis" and "explain osmosis please". Questions are reduced to their
+ * content words and compared by Jaccard similarity. Candidates are found through
+ * MinHash signatures split into LSH bands, and every band bucket holds a bounded
+ * number of entries, so a lookup takes bounded time however many questions are cached.
+ * 
+ * Answers are only shared between questions about the same document at the same level,
+ * and of the same kind: "when does osmosis happen" and "why does osmosis happen" share
+ * their content words but ask for different answers, so the question word is part of the scope.
+ */
+public class SemanticResponseCache {
+    private static final Logger LOGGER = Logger.getLogger(SemanticResponseCache.class.getName());
+    private static final int DEFAULT_MAX_ENTRIES = 2000;
+    private static final long DEFAULT_TTL_MILLIS = 24L * 60 * 60 * 1000;
+    private static final double DEFAULT_THRESHOLD = 0.8;
+    private static final int BANDS = 8;
+    private static final int ROWS = 4;
+    private static final int BUCKET_CAPACITY = 8;
+    private static SemanticResponseCache instance;
+    
+    // Question words that ask for a different kind of answer; anything else asks what something is
+    private static final Map<String, String> QUESTION_TYPES = Map.of(
+        "who", "who", "whom", "who", "whose", "who",
+        "when", "when", "where", "where", "why", "why", "how", "how");
+    private static final String DEFAULT_QUESTION_TYPE = "what";
+    
+    // Words that phrase a question without saying what it is about
+    private static final Set<String> FILLER_WORDS = Set.of(
+        "what", "which", "who", "whom", "whose", "when", "where", "why", "how",
+        "explain", "describe", "define", "definition", "tell", "please", "can", "could", "would",
+        "you", "the", "are", "was", "were", "does", "did", "about", "mean", "meaning", "means",
+        "give", "show", "help", "understand", "and", "for", "with", "this", "that", "these",
+        "those", "there", "some", "any", "know", "want", "like", "more", "again", "exactly");
+    
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final double threshold;
+    private final long[] hashSeeds = new long[BANDS * ROWS];
+    private final Tokenizer tokenizer = new Tokenizer();
+    
+    // Entries live in a ring; the oldest is overwritten when the cache is full
+    private final Entry[] entries;
+    private int nextSlot;
+    private final Map<Long, ArrayDeque<Integer>> buckets = new HashMap<>();
+    
+    private long hits;
+    private long misses;
+    
+    /**
+     * Creates a new semantic response cache
+     * 
+     * @param maxEntries The maximum number of cached responses
+     * @param ttlMillis How long a response stays valid, in milliseconds
+     * @param threshold The Jaccard similarity of content words above which two questions count as the same
+     */
+    public SemanticResponseCache(int maxEntries, long ttlMillis, double threshold) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.threshold = threshold;
+        this.entries = new Entry[maxEntries];
+        
+        // Fixed odd multipliers give independent-enough hash functions for MinHash
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < hashSeeds.length; i++) {
+            seed = mix(seed + i);
+            hashSeeds[i] = seed | 1L;
+        }
+    }
+    
+    /**
+     * Get the shared semantic response cache
+     * 
+     * @return The semantic response cache instance
+     */
+    public static synchronized SemanticResponseCache getInstance() {
+        if (instance == null) {
+            instance = new SemanticResponseCache(DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS, DEFAULT_THRESHOLD);
+        }
+        
+        return instance;
+    }
+    
+    /**
+     * Finds the answer to an earlier question similar to this one
+     * 
+     * @param documentKey Identifies the document or library the question is about
+     * @param userLevel The user's skill level
+     * @param question The question
+     * @return The earlier answer, or null if no similar question was answered
+     */
+    public synchronized String get(String documentKey, String userLevel, String question) {
+        String[] terms = contentTerms(question);
+        String scope = scope(documentKey, userLevel, question);
+        Entry best = null;
+        
+        if (terms.length > 0) {
+            long[] signature = signature(terms);
+            long now = System.currentTimeMillis();
+            double bestSimilarity = threshold;
+            
+            for (int band = 0; band < BANDS; band++) {
+                ArrayDeque<Integer> bucket = buckets.get(bandKey(scope, signature, band));
+                if (bucket == null) {
+                    continue;
+                }
+                
+                for (int slot : bucket) {
+                    Entry entry = entries[slot];
+                    if (entry.expiresAt <= now || !entry.scope.equals(scope)) {
+                        continue;
+                    }
+                    double similarity = jaccard(terms, entry.terms);
+                    if (similarity >= bestSimilarity) {
+                        best = entry;
+                        bestSimilarity = similarity;
+                    }
+                }
+            }
+        }
+        
+        if (best == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        LOGGER.fine(() -> "Semantic response cache " + getStats());
+        return best == null ? null : best.response;
+    }
+    
+    /**
+     * Caches the answer to a question. Questions without content words are not cached.
+     * 
+     * @param documentKey Identifies the document or library the question is about
+     * @param userLevel The user's skill level
+     * @param question The question
+     * @param response The answer
+     */
+    public synchronized void put(String documentKey, String userLevel, String question, String response) {
+        String[] terms = contentTerms(question);
+        if (terms.length == 0) {
+            return;
+        }
+        
+        int slot = nextSlot;
+        nextSlot = (nextSlot + 1) % maxEntries;
+        if (entries[slot] != null) {
+            unlink(slot);
+        }
+        
+        String scope = scope(documentKey, userLevel, question);
+        Entry entry = new Entry(scope, terms, signature(terms), response, System.currentTimeMillis() + ttlMillis);
+        entries[slot] = entry;
+        
+        for (int band = 0; band < BANDS; band++) {
+            ArrayDeque<Integer> bucket = buckets.computeIfAbsent(bandKey(scope, entry.signature, band),
+                key -> new ArrayDeque<>());
+            if (bucket.size() == BUCKET_CAPACITY) {
+                // Keep lookups bounded; the oldest entry stays reachable through its other bands
+                bucket.removeFirst();
+            }
+            bucket.addLast(slot);
+        }
+    }
+    
+    /**
+     * Gets the fraction of lookups that found an answer
+     * 
+     * @return The hit rate between 0 and 1, or 0 before the first lookup
+     */
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+    
+    /**
+     * Gets a one-line summary of the cache metrics
+     * 
+     * @return The metrics
+     */
+    public synchronized String getStats() {
+        return String.format(Locale.ROOT, "hits=%d misses=%d hitRate=%.3f buckets=%d",
+            hits, misses, getHitRate(), buckets.size());
+    }
+    
+    /**
+     * Builds the scope a question's answer may be shared in
+     * 
+     * @param documentKey Identifies the document or library the question is about
+     * @param userLevel The user's skill level
+     * @param question The question
+     * @return The scope key
+     */
+    private String scope(String documentKey, String userLevel, String question) {
+        return documentKey + '\u0000' + userLevel + '\u0000' + questionType(question);
+    }
+    
+    /**
+     * Finds the kind of answer a question asks for from its first question word,
+     * so "when", "where", "why", "how" and "who" questions are never matched with each other
+     * or with "what is" questions
+     * 
+     * @param question The question
+     * @return The question type
+     */
+    private String questionType(String question) {
+        for (String token : tokenizer.tokenize(question)) {
+            String type = QUESTION_TYPES.get(token);
+            if (type != null) {
+                return type;
+            }
+        }
+        return DEFAULT_QUESTION_TYPE;
+    }
+    
+    /**
+     * Reduces a question to its distinct, stemmed content words, in sorted order
+     * 
+     * @param question The question
+     * @return The content words
+     */
+    private String[] contentTerms(String question) {
+        List<String> tokens = tokenizer.tokenize(question);
+        Set<String> terms = new TreeSet<>();
+        for (String token : tokens) {
+            if (!FILLER_WORDS.contains(token)) {
+                terms.add(stem(token));
+            }
+        }
+        return terms.toArray(new String[0]);
+    }
+    
+    /**
+     * Strips a plural or third-person "s", so "produce" and "produces" match
+     * 
+     * @param term The term
+     * @return The stemmed term
+     */
+    private static String stem(String term) {
+        if (term.length() > 3 && term.endsWith("s") && !term.endsWith("ss")) {
+            return term.substring(0, term.length() - 1);
+        }
+        return term;
+    }
+    
+    /**
+     * Computes the MinHash signature of a set of terms
+     * 
+     * @param terms The terms
+     * @return The minimum hash of the terms under each hash function
+     */
+    private long[] signature(String[] terms) {
+        long[] signature = new long[hashSeeds.length];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        for (String term : terms) {
+            long termHash = term.hashCode();
+            for (int i = 0; i < hashSeeds.length; i++) {
+                signature[i] = Math.min(signature[i], mix(termHash * hashSeeds[i]));
+            }
+        }
+        return signature;
+    }
+    
+    /**
+     * Gets the bucket key of one band of a signature
+     * 
+     * @param scope The document and level the question belongs to
+     * @param signature The MinHash signature
+     * @param band The band
+     * @return The bucket key
+     */
+    private static long bandKey(String scope, long[] signature, int band) {
+        long key = scope.hashCode() * 31L + band;
+        for (int row = 0; row < ROWS; row++) {
+            key = mix(key * 31 + signature[band * ROWS + row]);
+        }
+        return key;
+    }
+    
+    /**
+     * Removes an entry from the buckets of its bands
+     * 
+     * @param slot The slot of the entry
+     */
+    private void unlink(int slot) {
+        Entry entry = entries[slot];
+        for (int band = 0; band < BANDS; band++) {
+            long key = bandKey(entry.scope, entry.signature, band);
+            ArrayDeque<Integer> bucket = buckets.get(key);
+            if (bucket != null) {
+                bucket.remove(slot);
+                if (bucket.isEmpty()) {
+                    buckets.remove(key);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Computes the Jaccard similarity of two sorted term arrays
+     * 
+     * @param a The first terms
+     * @param b The second terms
+     * @return The size of the intersection divided by the size of the union
+     */
+    private static double jaccard(String[] a, String[] b) {
+        int i = 0;
+        int j = 0;
+        int shared = 0;
+        while (i < a.length && j < b.length) {
+            int comparison = a[i].compareTo(b[j]);
+            if (comparison == 0) {
+                shared++;
+                i++;
+                j++;
+            } else if (comparison < 0) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return (double) shared / (a.length + b.length - shared);
+    }
+    
+    /**
+     * Scrambles the bits of a long (the SplitMix64 finalizer)
+     * 
+     * @param value The value
+     * @return The mixed value
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+    
+    /**
+     * A cached answer with the content words of its question
+     */
+    private static class Entry {
+        private final String scope;
+        private final String[] terms;
+        private final long[] signature;
+        private final String response;
+        private final long expiresAt;
+        
+        /**
+         * Creates a new entry
+         * 
+         * @param scope The document and level the question belongs to
+         * @param terms The content words of the question
+         * @param signature The MinHash signature of the terms
+         * @param response The answer
+         * @param expiresAt When the entry expires, in epoch milliseconds
+         */
+        private Entry(String scope, String[] terms, long[] signature, String response, long expiresAt) {
+            this.scope = scope;
+            this.terms = terms;
+            this.signature = signature;
+            this.response = response;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package com.learniq;
+
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits text into chunks of roughly a target size. Chunks can be cut at any
+ * word, or only at sentence or paragraph boundaries with a sliding window of
+ * overlap between neighbouring chunks, so an idea is less often cut in half.
+ */
+public class TextChunker implements ChunkingStrategy {
+    
+    /**
+     * Where a chunk is allowed to end
+     */
+    public enum Boundary {
+        WORD,
+        SENTENCE,
+        PARAGRAPH
+    }
+    
+    private final Boundary boundary;
+    private final int chunkSize;
+    private final int overlap;
+    
+    /**
+     * Creates a new TextChunker
+     * 
+     * @param boundary Where chunks are allowed to end
+     * @param chunkSize The approximate size of each chunk in characters
+     * @param overlap The maximum number of characters repeated from the end of the previous
+     *                chunk; only used by the sentence and paragraph modes
+     */
+    public TextChunker(Boundary boundary, int chunkSize, int overlap) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        if (overlap < 0 || overlap >= chunkSize) {
+            throw new IllegalArgumentException("Overlap must be between 0 and the chunk size");
+        }
+        
+        this.boundary = boundary;
+        this.chunkSize = chunkSize;
+        this.overlap = overlap;
+    }
+    
+    /**
+     * Creates a new TextChunker that cuts at any word without overlap
+     * 
+     * @param chunkSize The approximate size of each chunk in characters
+     */
+    public TextChunker(int chunkSize) {
+        this(Boundary.WORD, chunkSize, 0);
+    }
+    
+    @Override
+    public List<String> split(CharSequence text) {
+        if (boundary == Boundary.WORD) {
+            return splitWords(text);
+        }
+        
+        String source = text.toString();
+        int[] bounds = boundary == Boundary.SENTENCE
+            ? sentenceBounds(source)
+            : paragraphBounds(source);
+        
+        return pack(source, bounds);
+    }
+    
+    @Override
+    public String getId() {
+        return boundary.name().toLowerCase() + "-" + chunkSize + "-" + overlap;
+    }
+    
+    /**
+     * Splits text at word boundaries. Words are found by scanning the text once,
+     * and each chunk is cut directly out of the input, so no intermediate String
+     * is created per word.
+     * 
+     * @param text The text to split
+     * @return A list of text chunks
+     */
+    private List<String> splitWords(CharSequence text) {
+        List<String> chunks = new ArrayList<>();
+        int length = text.length();
+        
+        int chunkStart = -1;
+        int chunkEnd = 0;
+        int currentLength = 0;
+        int i = 0;
+        
+        while (i < length) {
+            // Skip the whitespace before the next word
+            while (i < length && Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+            
+            int wordStart = i;
+            while (i < length && !Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            
+            if (chunkStart < 0) {
+                chunkStart = wordStart;
+            }
+            chunkEnd = i;
+            currentLength += (i - wordStart) + 1; // +1 for the space
+            
+            if (currentLength >= chunkSize) {
+                chunks.add(text.subSequence(chunkStart, chunkEnd).toString());
+                chunkStart = -1;
+                currentLength = 0;
+            }
+        }
+        
+        // Add the last chunk if it contains anything
+        if (chunkStart >= 0) {
+            chunks.add(text.subSequence(chunkStart, chunkEnd).toString());
+        }
+        
+        return chunks;
+    }
+    
+    /**
+     * Packs consecutive units into chunks of at most chunkSize characters.
+     * Unit k spans bounds[k] to bounds[k + 1]. A unit longer than chunkSize
+     * on its own is split at word boundaries instead.
+     * 
+     * @param source The text the bounds refer to
+     * @param bounds The unit boundaries, starting at 0 and ending at the text length
+     * @return A list of text chunks
+     */
+    private List<String> pack(String source, int[] bounds) {
+        List<String> chunks = new ArrayList<>();
+        int units = bounds.length - 1;
+        int start = 0;
+        
+        while (start < units) {
+            int end = start + 1;
+            while (end < units && bounds[end + 1] - bounds[start] <= chunkSize) {
+                end++;
+            }
+            
+            if (end == start + 1 && bounds[end] - bounds[start] > chunkSize) {
+                // A single oversized sentence or paragraph
+                chunks.addAll(splitWords(source.subSequence(bounds[start], bounds[end])));
+                start = end;
+                continue;
+            }
+            
+            String chunk = source.substring(bounds[start], bounds[end]).strip();
+            if (!chunk.isEmpty()) {
+                chunks.add(chunk);
+            }
+            if (end == units) {
+                break;
+            }
+            
+            // Step back over trailing units that fit in the overlap window,
+            // always moving forward by at least one unit
+            int next = end;
+            while (next - 1 > start && bounds[end] - bounds[next - 1] <= overlap) {
+                next--;
+            }
+            start = next;
+        }
+        
+        return chunks;
+    }
+    
+    /**
+     * Finds sentence boundaries in the text
+     * 
+     * @param source The text to scan
+     * @return The sentence boundaries, starting at 0 and ending at the text length
+     */
+    private int[] sentenceBounds(String source) {
+        return sentenceBounds(source, 0, source.length(), new IntList()).toArray();
+    }
+    
+    /**
+     * Appends the sentence boundaries of a region of the text
+     * 
+     * @param source The text to scan
+     * @param from The start of the region
+     * @param to The end of the region
+     * @param bounds The list to append to
+     * @return The list of boundaries
+     */
+    private IntList sentenceBounds(String source, int from, int to, IntList bounds) {
+        BreakIterator sentences = BreakIterator.getSentenceInstance();
+        sentences.setText(source.substring(from, to));
+        
+        if (bounds.size() == 0) {
+            bounds.add(from);
+        }
+        for (int end = sentences.next(); end != BreakIterator.DONE; end = sentences.next()) {
+            bounds.add(from + end);
+        }
+        return bounds;
+    }
+    
+    /**
+     * Finds paragraph boundaries in the text. A paragraph ends at a blank line;
+     * paragraphs longer than chunkSize are further divided into sentences.
+     * 
+     * @param source The text to scan
+     * @return The paragraph boundaries, starting at 0 and ending at the text length
+     */
+    private int[] paragraphBounds(String source) {
+        IntList bounds = new IntList();
+        bounds.add(0);
+        
+        int length = source.length();
+        int paragraphStart = 0;
+        int i = 0;
+        
+        while (i < length) {
+            if (source.charAt(i) != '\n') {
+                i++;
+                continue;
+            }
+            
+            // Look past spaces on the following line for a second line break
+            int j = i + 1;
+            while (j < length && source.charAt(j) != '\n' && Character.isWhitespace(source.charAt(j))) {
+                j++;
+            }
+            if (j < length && source.charAt(j) == '\n') {
+                addParagraph(source, paragraphStart, j + 1, bounds);
+                paragraphStart = j + 1;
+            }
+            i = j;
+        }
+        
+        if (paragraphStart < length) {
+            addParagraph(source, paragraphStart, length, bounds);
+        }
+        return bounds.toArray();
+    }
+    
+    /**
+     * Appends the end of a paragraph, or its sentence boundaries if it is too long
+     * 
+     * @param source The text being scanned
+     * @param from The start of the paragraph
+     * @param to The end of the paragraph
+     * @param bounds The list to append to
+     */
+    private void addParagraph(String source, int from, int to, IntList bounds) {
+        if (to - from > chunkSize) {
+            sentenceBounds(source, from, to, bounds);
+        } else {
+            bounds.add(to);
+        }
+    }
+    
+    /**
+     * Minimal growable list of primitive ints
+     */
+    private static class IntList {
+        private int[] values = new int[64];
+        private int size;
+        
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+        
+        int size() {
+            return size;
+        }
+        
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -1,17 +1,91 @@
 package com.learniq;
 
+import com.learniq.retrieval.InvertedIndex;
+import com.learniq.retrieval.LexicalIndex;
+import com.learniq.retrieval.ScoreAccumulator;
+import com.learniq.retrieval.ScoredChunk;
+import com.learniq.retrieval.Tokenizer;
+import com.learniq.retrieval.TopKSelector;
+
+import java.nio.IntBuffer;
 import java.util.*;
-import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 
 /**
- * Implements a simplified TF-IDF vectorization and similarity calculations
- * for finding relevant text chunks, without external dependencies
+ * Implements TF-IDF and BM25 similarity calculations for finding relevant
+ * text chunks, without external dependencies
  */
 public class TfidfVectorizer {
-    private final Pattern nonAlphanumeric = Pattern.compile("[^a-zA-Z0-9]");
     
     /**
-     * Gets the most relevant chunks of text for a given query
+     * How chunks are scored against a query
+     */
+    public enum Scoring {
+        /** Raw term overlap divided by the square root of the chunk length */
+        OVERLAP,
+        /** Cosine similarity of (1 + ln tf) * idf weighted vectors */
+        TFIDF,
+        /** Okapi BM25 */
+        BM25
+    }
+    
+    private final Tokenizer tokenizer = new Tokenizer();
+    // Reused per thread, since one vectorizer may serve several searches at once
+    private final ThreadLocal<ScoreAccumulator> accumulators = ThreadLocal.withInitial(ScoreAccumulator::new);
+    private final Scoring scoring;
+    private final double k1;
+    private final double b;
+    
+    /**
+     * Creates a vectorizer that scores with BM25 using the usual k1 = 1.2 and b = 0.75
+     */
+    public TfidfVectorizer() {
+        this(Scoring.BM25, 1.2, 0.75);
+    }
+    
+    /**
+     * Creates a vectorizer with the given scoring
+     * 
+     * @param scoring The scoring function to use
+     * @param k1 The BM25 term frequency saturation; ignored by other scorings
+     * @param b The BM25 length normalization strength between 0 and 1; ignored by other scorings
+     */
+    public TfidfVectorizer(Scoring scoring, double k1, double b) {
+        this.scoring = scoring;
+        this.k1 = k1;
+        this.b = b;
+    }
+    
+    /**
+     * Builds an inverted index over the given chunks. Each chunk is tokenized once,
+     * so the index can be reused for every query against the same document.
+     * 
+     * @param chunks The list of text chunks to index
+     * @return The index
+     */
+    public InvertedIndex buildIndex(List<String> chunks) {
+        InvertedIndex index = new InvertedIndex();
+        for (String chunk : chunks) {
+            addToIndex(index, chunk);
+        }
+        return index;
+    }
+    
+    /**
+     * Adds a single chunk to an existing index
+     * 
+     * @param index The index to add to
+     * @param chunk The chunk text
+     * @return The ID assigned to the chunk
+     */
+    public int addToIndex(InvertedIndex index, String chunk) {
+        return index.addChunk(chunk, tokenizer);
+    }
+    
+    /**
+     * Gets the most relevant chunks of text for a given query. This builds a
+     * throwaway index, so prefer {@link #getRelevantChunks(String, LexicalIndex, int)}
+     * when querying the same chunks more than once.
      * 
      * @param query The search query
      * @param chunks The list of text chunks to search through
@@ -19,74 +93,199 @@ public class TfidfVectorizer {
      * @return List of the most relevant text chunks
      */
     public List<String> getRelevantChunks(String query, List<String> chunks, int topK) {
-        // Simple implementation: look for keyword matches with query
-        List<String> allChunks = new ArrayList<>(chunks);
+        return getRelevantChunks(query, buildIndex(chunks), topK);
+    }
+    
+    /**
+     * Gets the most relevant chunks of an index for a given query. Only the
+     * postings of the query terms are visited.
+     * 
+     * @param query The search query
+     * @param index The index to search
+     * @param topK The number of chunks to return
+     * @return List of the most relevant text chunks
+     */
+    public List<String> getRelevantChunks(String query, LexicalIndex index, int topK) {
         List<String> topChunks = new ArrayList<>();
+        for (ScoredChunk result : search(query, index, topK)) {
+            topChunks.add(index.getChunk(result.getChunkId()));
+        }
         
-        // Normalize and split query
-        String[] queryWords = normalizeText(query);
+        return topChunks;
+    }
+    
+    /**
+     * Finds the IDs and scores of the most relevant chunks for a query. When
+     * fewer than topK chunks contain a query term, for example because every
+     * query word is unknown or too short, the remaining places go to the leading
+     * chunks of the index with a score of 0, so the caller still gets context.
+     * 
+     * @param query The search query
+     * @param index The index to search
+     * @param topK The number of chunks to return
+     * @return The best chunks in descending score order, min(topK, chunk count) of them
+     */
+    public List<ScoredChunk> search(String query, LexicalIndex index, int topK) {
+        ScoreAccumulator scores = scoreChunks(query, index);
         
-        // Score each chunk based on word overlap with query
-        Map<String, Double> scores = new HashMap<>();
+        // Keep the top K in a bounded heap; chunks without any query term never compete
+        TopKSelector selector = new TopKSelector(Math.min(topK, scores.getTouchedCount()));
+        for (int i = 0; i < scores.getTouchedCount(); i++) {
+            int chunkId = scores.getTouchedChunkId(i);
+            selector.offer(chunkId, scores.getScore(chunkId));
+        }
+        List<ScoredChunk> results = selector.drain();
         
-        for (String chunk : chunks) {
-            String[] chunkWords = normalizeText(chunk);
-            double score = calculateOverlapScore(queryWords, chunkWords);
-            scores.put(chunk, score);
+        // Fewer matches than places means every touched chunk is already in the results
+        int wanted = Math.min(topK, index.getChunkCount());
+        for (int chunkId = 0; results.size() < wanted; chunkId++) {
+            if (!scores.isTouched(chunkId)) {
+                results.add(new ScoredChunk(chunkId, 0.0));
+            }
         }
         
-        // Sort chunks by score and take top K
-        allChunks.sort((a, b) -> Double.compare(scores.getOrDefault(b, 0.0), scores.getOrDefault(a, 0.0)));
+        return results;
+    }
+    
+    /**
+     * Scores the chunks of the index that contain a query term
+     * 
+     * @param query The search query
+     * @param index The index to score
+     * @return The scores of the touched chunks; valid until this thread's next search
+     */
+    private ScoreAccumulator scoreChunks(String query, LexicalIndex index) {
+        ScoreAccumulator scores = accumulators.get();
+        scores.reset(index.getChunkCount());
+        
+        // Look up the indexed query words as they are tokenized; words not in the index cannot score
+        IntStream.Builder found = IntStream.builder();
+        tokenizer.tokenize(query, queryWord -> {
+            int termId = index.getTermId(queryWord);
+            if (termId >= 0) {
+                found.add(termId);
+            }
+        });
         
-        // Take top K results
-        int resultSize = Math.min(topK, allChunks.size());
-        for (int i = 0; i < resultSize; i++) {
-            topChunks.add(allChunks.get(i));
+        // Count how often each term occurs by sorting the IDs and measuring the runs, as the index does
+        int[] queryTermIds = found.build().sorted().toArray();
+        int[] termIds = new int[queryTermIds.length];
+        int[] termCounts = new int[queryTermIds.length];
+        int distinct = 0;
+        for (int i = 0; i < queryTermIds.length; i++) {
+            if (distinct > 0 && termIds[distinct - 1] == queryTermIds[i]) {
+                termCounts[distinct - 1]++;
+            } else {
+                termIds[distinct] = queryTermIds[i];
+                termCounts[distinct++] = 1;
+            }
         }
+        termIds = Arrays.copyOf(termIds, distinct);
+        termCounts = Arrays.copyOf(termCounts, distinct);
         
-        return topChunks;
+        switch (scoring) {
+            case OVERLAP:
+                scoreOverlap(termIds, termCounts, index, scores);
+                break;
+            case TFIDF:
+                scoreTfidf(termIds, termCounts, index, scores);
+                break;
+            case BM25:
+            default:
+                scoreBm25(termIds, termCounts, index, scores);
+                break;
+        }
+        
+        return scores;
     }
     
     /**
-     * Normalizes and tokenizes text into an array of words
+     * Scores chunks by term overlap with the query, normalized by chunk length
      * 
-     * @param text The text to process
-     * @return Array of normalized words
+     * @param termIds The IDs of the query terms
+     * @param termCounts How often each query term occurs in the query
+     * @param index The index to score
+     * @param scores Receives the scores of the chunks
      */
-    private String[] normalizeText(String text) {
-        // Convert to lowercase
-        String lowerText = text.toLowerCase();
-        
-        // Remove non-alphanumeric characters and replace with spaces
-        String cleanText = nonAlphanumeric.matcher(lowerText).replaceAll(" ");
+    private void scoreOverlap(int[] termIds, int[] termCounts, LexicalIndex index, ScoreAccumulator scores) {
+        for (int t = 0; t < termIds.length; t++) {
+            IntBuffer chunkIds = index.getPostingChunkIds(termIds[t]);
+            IntBuffer frequencies = index.getPostingFrequencies(termIds[t]);
+            int count = index.getPostingCount(termIds[t]);
+            
+            for (int p = 0; p < count; p++) {
+                scores.add(chunkIds.get(p), termCounts[t] * frequencies.get(p));
+            }
+        }
         
-        // Split into words and filter out short words
-        return Arrays.stream(cleanText.split("\\s+"))
-            .filter(word -> word.length() > 2) // Filter out short words
-            .toArray(String[]::new);
+        // Normalize by chunk length to avoid bias towards longer chunks
+        for (int i = 0; i < scores.getTouchedCount(); i++) {
+            int chunkId = scores.getTouchedChunkId(i);
+            scores.setScore(chunkId, scores.getScore(chunkId) / Math.sqrt(index.getChunkLength(chunkId)));
+        }
     }
     
     /**
-     * Calculates a simple overlap score between query and chunk words
+     * Scores chunks by the cosine similarity of their TF-IDF vectors with the query's
      * 
-     * @param queryWords Array of query words
-     * @param chunkWords Array of chunk words
-     * @return A similarity score
+     * @param termIds The IDs of the query terms
+     * @param termCounts How often each query term occurs in the query
+     * @param index The index to score
+     * @param scores Receives the scores of the chunks
      */
-    private double calculateOverlapScore(String[] queryWords, String[] chunkWords) {
-        // Count word occurrences in chunk
-        Map<String, Integer> chunkWordCounts = new HashMap<>();
-        for (String word : chunkWords) {
-            chunkWordCounts.put(word, chunkWordCounts.getOrDefault(word, 0) + 1);
+    private void scoreTfidf(int[] termIds, int[] termCounts, LexicalIndex index, ScoreAccumulator scores) {
+        double queryNorm = 0.0;
+        for (int t = 0; t < termIds.length; t++) {
+            double idf = index.getIdf(termIds[t]);
+            double queryWeight = (1.0 + Math.log(termCounts[t])) * idf;
+            queryNorm += queryWeight * queryWeight;
+            
+            IntBuffer chunkIds = index.getPostingChunkIds(termIds[t]);
+            IntBuffer frequencies = index.getPostingFrequencies(termIds[t]);
+            int count = index.getPostingCount(termIds[t]);
+            
+            for (int p = 0; p < count; p++) {
+                double chunkWeight = (1.0 + Math.log(frequencies.get(p))) * idf;
+                scores.add(chunkIds.get(p), queryWeight * chunkWeight);
+            }
         }
         
-        // Calculate score based on query terms found in chunk
-        double score = 0.0;
-        for (String queryWord : queryWords) {
-            score += chunkWordCounts.getOrDefault(queryWord, 0);
+        queryNorm = Math.sqrt(queryNorm);
+        for (int i = 0; i < scores.getTouchedCount(); i++) {
+            int chunkId = scores.getTouchedChunkId(i);
+            double score = scores.getScore(chunkId);
+            if (score > 0.0) {
+                scores.setScore(chunkId, score / (queryNorm * index.getTfidfNorm(chunkId)));
+            }
         }
+    }
+    
+    /**
+     * Scores chunks with Okapi BM25
+     * 
+     * @param termIds The IDs of the query terms
+     * @param termCounts How often each query term occurs in the query
+     * @param index The index to score
+     * @param scores Receives the scores of the chunks
+     */
+    private void scoreBm25(int[] termIds, int[] termCounts, LexicalIndex index, ScoreAccumulator scores) {
+        int chunkCount = index.getChunkCount();
+        double averageLength = index.getAverageChunkLength();
         
-        // Normalize by chunk length to avoid bias towards longer chunks
-        return score / Math.sqrt(chunkWords.length);
+        for (int t = 0; t < termIds.length; t++) {
+            IntBuffer chunkIds = index.getPostingChunkIds(termIds[t]);
+            IntBuffer frequencies = index.getPostingFrequencies(termIds[t]);
+            int count = index.getPostingCount(termIds[t]);
+            
+            double idf = Math.log(1.0 + (chunkCount - count + 0.5) / (count + 0.5));
+            double weight = termCounts[t] * idf;
+            
+            for (int p = 0; p < count; p++) {
+                int chunkId = chunkIds.get(p);
+                int tf = frequencies.get(p);
+                double lengthRatio = index.getChunkLength(chunkId) / averageLength;
+                scores.add(chunkId, weight * tf * (k1 + 1.0) / (tf + k1 * (1.0 - b + b * lengthRatio)));
+            }
+        }
     }
 }
\ No newline at end of file
@@ -1,5 +1,7 @@
 package com.learniq.db;
 
+import com.learniq.IngestionService;
+
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -18,7 +20,8 @@ public class DbUtils {
     private static final String DOCUMENTS_FOLDER = "user_documents";
     
     /**
-     * Saves a file to the user documents folder and creates a document in the database
+     * Saves a file to the user documents folder, creates a document in the database
+     * and queues the document for background ingestion
      * 
      * @param filePath The path to the file to save
      * @param fileName The name of the file
@@ -43,6 +46,8 @@ public class DbUtils {
             // Create a document in the database
             Document document = new Document(fileName, targetPath.toString(), userId);
             if (document.save()) {
+                // Start extracting the text now so the document is ready when it is opened
+                IngestionService.getInstance().submit(document.getId(), userId, fileName, targetPath.toFile());
                 return document.getId();
             } else {
                 // Delete the file if the document couldn't be saved
@@ -72,6 +77,9 @@ public class DbUtils {
             // Delete the file
             Files.deleteIfExists(Paths.get(document.getFilePath()));
             
+            // Stop returning it from library searches
+            IngestionService.getInstance().removeDocument(documentId, document.getOwnerId());
+            
             // Delete the document from the database
             return Document.delete(documentId);
         } catch (Exception e) {
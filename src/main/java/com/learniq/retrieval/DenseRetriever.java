@@ -0,0 +1,105 @@
+package com.learniq.retrieval;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Retrieves chunks by the cosine similarity of their embeddings with the
+ * query's embedding, so paraphrased questions can match without sharing words
+ */
+public class DenseRetriever implements Retriever {
+    private final EmbeddingProvider embeddingProvider;
+    private final VectorSearch vectorIndex;
+    // The same index when chunks can be added, otherwise null
+    private final MutableVectorSearch mutableIndex;
+    private final List<String> chunks = new ArrayList<>();
+    
+    /**
+     * Creates an empty dense retriever with exact search
+     * 
+     * @param embeddingProvider The provider used to embed chunks and queries
+     */
+    public DenseRetriever(EmbeddingProvider embeddingProvider) {
+        this(embeddingProvider, new VectorIndex(embeddingProvider.getDimension()));
+    }
+    
+    /**
+     * Creates an empty dense retriever
+     * 
+     * @param embeddingProvider The provider used to embed chunks and queries
+     * @param vectorIndex The index to store the chunk vectors in, e.g. an exact
+     *                    {@link VectorIndex} or an approximate {@link HnswIndex}
+     */
+    public DenseRetriever(EmbeddingProvider embeddingProvider, MutableVectorSearch vectorIndex) {
+        this.embeddingProvider = embeddingProvider;
+        this.vectorIndex = vectorIndex;
+        this.mutableIndex = vectorIndex;
+    }
+    
+    /**
+     * Creates a dense retriever with exact search over the given chunks
+     * 
+     * @param embeddingProvider The provider used to embed chunks and queries
+     * @param chunks The chunks to index
+     */
+    public DenseRetriever(EmbeddingProvider embeddingProvider, List<String> chunks) {
+        this(embeddingProvider);
+        addChunks(chunks);
+    }
+    
+    /**
+     * Creates a dense retriever over chunks whose vectors are already in the index,
+     * e.g. read from a stored {@link IndexSegment}. No chunks can be added to it.
+     * 
+     * @param embeddingProvider The provider used to embed queries; must match the stored vectors
+     * @param vectorIndex The index holding the vector of every chunk, in chunk order
+     * @param chunks The chunk texts
+     */
+    public DenseRetriever(EmbeddingProvider embeddingProvider, VectorSearch vectorIndex, List<String> chunks) {
+        this.embeddingProvider = embeddingProvider;
+        this.vectorIndex = vectorIndex;
+        this.mutableIndex = null;
+        if (vectorIndex.size() != chunks.size()) {
+            throw new IllegalArgumentException("Expected " + chunks.size() + " vectors but the index has " + vectorIndex.size());
+        }
+        this.chunks.addAll(chunks);
+    }
+    
+    /**
+     * Embeds and indexes several chunks
+     * 
+     * @param chunks The chunks to add
+     * @throws IllegalStateException If the retriever was created over prebuilt vectors
+     */
+    public void addChunks(List<String> chunks) {
+        for (String chunk : chunks) {
+            addChunk(chunk);
+        }
+    }
+    
+    /**
+     * Embeds and indexes a chunk
+     * 
+     * @param chunk The chunk text
+     * @return The ID assigned to the chunk
+     * @throws IllegalStateException If the retriever was created over prebuilt vectors
+     */
+    public synchronized int addChunk(String chunk) {
+        if (mutableIndex == null) {
+            throw new IllegalStateException("This retriever searches prebuilt vectors; chunks cannot be added");
+        }
+        
+        chunks.add(chunk);
+        return mutableIndex.add(embeddingProvider.embed(chunk));
+    }
+    
+    @Override
+    public List<ScoredChunk> retrieve(String query, int topK) {
+        return vectorIndex.search(embeddingProvider.embed(query), topK);
+    }
+    
+    @Override
+    public synchronized String getChunk(int chunkId) {
+        return chunks.get(chunkId);
+    }
+}
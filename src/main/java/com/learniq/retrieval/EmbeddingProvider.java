@@ -0,0 +1,30 @@
+package com.learniq.retrieval;
+
+/**
+ * Turns text into a dense vector so that texts with similar meaning end up close together
+ */
+public interface EmbeddingProvider {
+    /**
+     * Gets the number of dimensions of the vectors this provider produces
+     * 
+     * @return The vector dimension
+     */
+    int getDimension();
+    
+    /**
+     * Gets an identifier for this provider and its parameters. Two providers with
+     * the same id must produce the same vector for the same text, so stored
+     * vectors are only reused with the provider that made them.
+     * 
+     * @return The provider id
+     */
+    String getId();
+    
+    /**
+     * Embeds a text
+     * 
+     * @param text The text to embed
+     * @return A unit-length vector of {@link #getDimension()} floats, or all zeros for text without terms
+     */
+    float[] embed(String text);
+}
@@ -0,0 +1,89 @@
+package com.learniq.retrieval;
+
+/**
+ * Deterministic local embedding based on the hashing trick. Every term and every
+ * character trigram of a term is hashed to a signed vector slot, so words sharing
+ * a stem ("osmosis", "osmotic") land near each other without a trained model.
+ * Useful offline and in tests; a learned model can be plugged in through
+ * {@link EmbeddingProvider} for better paraphrase matching.
+ */
+public class HashingEmbeddingProvider implements EmbeddingProvider {
+    private static final float TRIGRAM_WEIGHT = 0.5f;
+    
+    private final int dimension;
+    private final Tokenizer tokenizer = new Tokenizer();
+    
+    /**
+     * Creates a provider producing 384-dimensional vectors
+     */
+    public HashingEmbeddingProvider() {
+        this(384);
+    }
+    
+    /**
+     * Creates a provider
+     * 
+     * @param dimension The number of dimensions of the vectors
+     */
+    public HashingEmbeddingProvider(int dimension) {
+        this.dimension = dimension;
+    }
+    
+    @Override
+    public int getDimension() {
+        return dimension;
+    }
+    
+    @Override
+    public String getId() {
+        return "hashing-" + dimension;
+    }
+    
+    @Override
+    public float[] embed(String text) {
+        float[] vector = new float[dimension];
+        
+        tokenizer.tokenize(text, term -> {
+            addFeature(vector, term.hashCode(), 1.0f);
+            
+            // Character trigrams of the term padded with boundary markers
+            String padded = "<" + term + ">";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                addFeature(vector, padded.substring(i, i + 3).hashCode() * 31 + 7, TRIGRAM_WEIGHT);
+            }
+        });
+        
+        // Dampen repeated terms, then scale to unit length so a dot product is the cosine
+        double norm = 0.0;
+        for (int i = 0; i < dimension; i++) {
+            float value = vector[i];
+            value = Math.signum(value) * (float) Math.log1p(Math.abs(value));
+            vector[i] = value;
+            norm += value * value;
+        }
+        if (norm > 0.0) {
+            float scale = (float) (1.0 / Math.sqrt(norm));
+            for (int i = 0; i < dimension; i++) {
+                vector[i] *= scale;
+            }
+        }
+        
+        return vector;
+    }
+    
+    /**
+     * Adds a hashed feature to the vector
+     * 
+     * @param vector The vector to update
+     * @param hash The hash of the feature
+     * @param weight The weight of the feature
+     */
+    private void addFeature(float[] vector, int hash, float weight) {
+        int mixed = hash * 0x9E3779B9;
+        mixed ^= mixed >>> 15;
+        int slot = Math.floorMod(mixed, dimension);
+        
+        // A second hash bit picks the sign so collisions tend to cancel out
+        vector[slot] += (mixed & 0x40000000) == 0 ? weight : -weight;
+    }
+}
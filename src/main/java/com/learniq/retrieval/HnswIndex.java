@@ -0,0 +1,532 @@
+package com.learniq.retrieval;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Approximate nearest-neighbour index using a Hierarchical Navigable Small World
+ * graph (Malkov and Yashunin). Every vector is linked to its closest neighbours on
+ * layer 0 and, with exponentially decreasing probability, on sparser upper layers.
+ * A search descends greedily through the upper layers and then explores layer 0
+ * with a beam of efSearch candidates, visiting only a small part of the index.
+ * 
+ * Vectors can be added at any time. Adds and searches are synchronized. The
+ * graph can be written to a file and read back over the same vectors, so a large
+ * document's graph is built once instead of every time the document is opened.
+ */
+public class HnswIndex implements MutableVectorSearch {
+    private static final int MAGIC = 0x4c514847; // "LQHG"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    
+    private final VectorIndex vectors;
+    private final int m;
+    private final int maxLinksLayer0;
+    private final int efConstruction;
+    private volatile int efSearch;
+    private final double levelMultiplier;
+    private final Random random = new Random(42);
+    
+    // links[node][layer] holds the neighbour IDs, linkCounts[node][layer] how many are in use
+    private int[][][] links = new int[64][][];
+    private int[][] linkCounts = new int[64][];
+    private int entryPoint = -1;
+    private int topLayer = -1;
+    
+    // Visit marks reused between searches; a node is visited when its mark equals visitTag
+    private int[] visitMarks = new int[64];
+    private int visitTag;
+    
+    /**
+     * Creates an index with M = 16, efConstruction = 200 and efSearch = 64
+     * 
+     * @param dimension The number of dimensions of the vectors
+     */
+    public HnswIndex(int dimension) {
+        this(dimension, 16, 200, 64);
+    }
+    
+    /**
+     * Creates an index
+     * 
+     * @param dimension The number of dimensions of the vectors
+     * @param m The number of links per node on the upper layers; layer 0 allows twice as many
+     * @param efConstruction The beam width used while inserting; higher builds a better graph more slowly
+     * @param efSearch The beam width used while searching; higher improves recall at the cost of latency
+     */
+    public HnswIndex(int dimension, int m, int efConstruction, int efSearch) {
+        if (m < 2) {
+            throw new IllegalArgumentException("M must be at least 2");
+        }
+        
+        this.vectors = new VectorIndex(dimension);
+        this.m = m;
+        this.maxLinksLayer0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.levelMultiplier = 1.0 / Math.log(m);
+    }
+    
+    /**
+     * Sets the beam width used while searching
+     * 
+     * @param efSearch The new beam width
+     */
+    public void setEfSearch(int efSearch) {
+        this.efSearch = efSearch;
+    }
+    
+    @Override
+    public synchronized int add(float[] vector) {
+        int node = vectors.add(vector);
+        int level = (int) (-Math.log(1.0 - random.nextDouble()) * levelMultiplier);
+        allocateNode(node, level);
+        
+        if (entryPoint < 0) {
+            entryPoint = node;
+            topLayer = level;
+            return node;
+        }
+        
+        // Descend greedily to the new node's top layer
+        int current = entryPoint;
+        for (int layer = topLayer; layer > level; layer--) {
+            current = greedyClosest(vector, current, layer);
+        }
+        
+        // Link the node into every layer it belongs to
+        for (int layer = Math.min(level, topLayer); layer >= 0; layer--) {
+            List<ScoredChunk> candidates = searchLayer(vector, current, efConstruction, layer);
+            int maxLinks = layer == 0 ? maxLinksLayer0 : m;
+            
+            for (int neighbour : selectNeighbours(candidates)) {
+                addLink(node, neighbour, layer, maxLinks);
+                addLink(neighbour, node, layer, maxLinks);
+            }
+            current = candidates.get(0).getChunkId();
+        }
+        
+        if (level > topLayer) {
+            entryPoint = node;
+            topLayer = level;
+        }
+        return node;
+    }
+    
+    @Override
+    public synchronized List<ScoredChunk> search(float[] query, int topK) {
+        if (entryPoint < 0 || topK <= 0) {
+            return List.of();
+        }
+        
+        int current = entryPoint;
+        for (int layer = topLayer; layer > 0; layer--) {
+            current = greedyClosest(query, current, layer);
+        }
+        
+        List<ScoredChunk> results = searchLayer(query, current, Math.max(efSearch, topK), 0);
+        return results.size() > topK ? results.subList(0, topK) : results;
+    }
+    
+    @Override
+    public synchronized int size() {
+        return vectors.size();
+    }
+    
+    /**
+     * Writes the graph to a file. The vectors are not written; they are supplied
+     * again when the graph is read. The file is written under a temporary name and
+     * moved into place, so readers never see a partial graph.
+     * 
+     * @param file The graph file to create or replace
+     * @throws IOException If the file cannot be written
+     */
+    public synchronized void write(Path file) throws IOException {
+        int size = vectors.size();
+        long length = HEADER_SIZE;
+        for (int node = 0; node < size; node++) {
+            length += 4;
+            for (int layer = 0; layer < linkCounts[node].length; layer++) {
+                length += 4 + 4L * linkCounts[node][layer];
+            }
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Graph is too large to write");
+        }
+        
+        ByteBuffer buffer = ByteBuffer.allocate((int) length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(vectors.getDimension());
+        buffer.putInt(m);
+        buffer.putInt(efConstruction);
+        buffer.putInt(size);
+        buffer.putInt(entryPoint);
+        buffer.putInt(topLayer);
+        
+        // Per node: its layer count, then per layer the link count and the links
+        for (int node = 0; node < size; node++) {
+            buffer.putInt(linkCounts[node].length);
+            for (int layer = 0; layer < linkCounts[node].length; layer++) {
+                buffer.putInt(linkCounts[node][layer]);
+                buffer.asIntBuffer().put(links[node][layer], 0, linkCounts[node][layer]);
+                buffer.position(buffer.position() + 4 * linkCounts[node][layer]);
+            }
+        }
+        buffer.flip();
+        
+        Path folder = file.toAbsolutePath().getParent();
+        Files.createDirectories(folder);
+        Path tempFile = Files.createTempFile(folder, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            
+            try {
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+    
+    /**
+     * Reads a graph written by {@link #write} over the vectors it was built from,
+     * searching with efSearch = 64
+     * 
+     * @param file The graph file
+     * @param vectors The vectors the graph was built from, in the same order
+     * @return The index
+     * @throws IOException If the file cannot be read, is not a valid graph or does not match the vectors
+     */
+    public static HnswIndex read(Path file, MappedVectorIndex vectors) throws IOException {
+        return read(file, vectors, 64);
+    }
+    
+    /**
+     * Reads a graph written by {@link #write} over the vectors it was built from.
+     * This copies the vectors and links, which takes a fraction of the time that
+     * building the graph again would.
+     * 
+     * @param file The graph file
+     * @param vectors The vectors the graph was built from, in the same order
+     * @param efSearch The beam width used while searching
+     * @return The index
+     * @throws IOException If the file cannot be read, is not a valid graph or does not match the vectors
+     */
+    public static HnswIndex read(Path file, MappedVectorIndex vectors, int efSearch) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Not an HNSW graph or unknown version: " + file);
+        }
+        
+        int dimension = buffer.getInt();
+        int m = buffer.getInt();
+        int efConstruction = buffer.getInt();
+        int size = buffer.getInt();
+        int entryPoint = buffer.getInt();
+        int topLayer = buffer.getInt();
+        if (dimension != vectors.getDimension() || size != vectors.size() || m < 2
+                || entryPoint >= size || (entryPoint < 0) != (size == 0)) {
+            throw new IOException("HNSW graph does not match its vectors: " + file);
+        }
+        
+        HnswIndex index = new HnswIndex(dimension, m, efConstruction, efSearch);
+        try {
+            for (int node = 0; node < size; node++) {
+                index.vectors.add(vectors.getVector(node));
+                
+                int layers = buffer.getInt();
+                if (layers < 1 || layers > topLayer + 1) {
+                    throw new IOException("HNSW graph is corrupt: " + file);
+                }
+                index.allocateNode(node, layers - 1);
+                for (int layer = 0; layer < layers; layer++) {
+                    int count = buffer.getInt();
+                    if (count < 0 || count > index.links[node][layer].length) {
+                        throw new IOException("HNSW graph is corrupt: " + file);
+                    }
+                    for (int i = 0; i < count; i++) {
+                        int neighbour = buffer.getInt();
+                        if (neighbour < 0 || neighbour >= size) {
+                            throw new IOException("HNSW graph is corrupt: " + file);
+                        }
+                        index.links[node][layer][i] = neighbour;
+                    }
+                    index.linkCounts[node][layer] = count;
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("HNSW graph is truncated: " + file, e);
+        }
+        if (buffer.hasRemaining() || (size > 0 && index.links[entryPoint].length != topLayer + 1)) {
+            throw new IOException("HNSW graph is corrupt: " + file);
+        }
+        
+        // A link must lead to a node that exists on the link's layer
+        for (int node = 0; node < size; node++) {
+            for (int layer = 0; layer < index.links[node].length; layer++) {
+                for (int i = 0; i < index.linkCounts[node][layer]; i++) {
+                    if (index.links[index.links[node][layer][i]].length <= layer) {
+                        throw new IOException("HNSW graph is corrupt: " + file);
+                    }
+                }
+            }
+        }
+        
+        index.entryPoint = entryPoint;
+        index.topLayer = topLayer;
+        return index;
+    }
+    
+    /**
+     * Follows links on one layer as long as they lead closer to the query
+     * 
+     * @param query The query vector
+     * @param start The node to start from
+     * @param layer The layer to walk
+     * @return The closest node found
+     */
+    private int greedyClosest(float[] query, int start, int layer) {
+        int current = start;
+        float best = vectors.similarity(query, current);
+        
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] neighbours = links[current][layer];
+            int count = linkCounts[current][layer];
+            for (int i = 0; i < count; i++) {
+                float similarity = vectors.similarity(query, neighbours[i]);
+                if (similarity > best) {
+                    best = similarity;
+                    current = neighbours[i];
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+    
+    /**
+     * Beam search on one layer
+     * 
+     * @param query The query vector
+     * @param start The node to start from
+     * @param ef The beam width
+     * @param layer The layer to search
+     * @return Up to ef nodes, best first
+     */
+    private List<ScoredChunk> searchLayer(float[] query, int start, int ef, int layer) {
+        if (++visitTag == Integer.MAX_VALUE) {
+            Arrays.fill(visitMarks, 0);
+            visitTag = 1;
+        }
+        
+        CandidateQueue candidates = new CandidateQueue();
+        TopKSelector results = new TopKSelector(ef);
+        
+        float startSimilarity = vectors.similarity(query, start);
+        visitMarks[start] = visitTag;
+        candidates.push(start, startSimilarity);
+        results.offer(start, startSimilarity);
+        
+        while (candidates.size() > 0) {
+            float similarity = candidates.peekScore();
+            if (similarity < results.getThreshold()) {
+                // Every remaining candidate is worse than the worst result
+                break;
+            }
+            int node = candidates.pop();
+            
+            int[] neighbours = links[node][layer];
+            int count = linkCounts[node][layer];
+            for (int i = 0; i < count; i++) {
+                int neighbour = neighbours[i];
+                if (visitMarks[neighbour] == visitTag) {
+                    continue;
+                }
+                visitMarks[neighbour] = visitTag;
+                
+                float neighbourSimilarity = vectors.similarity(query, neighbour);
+                if (neighbourSimilarity > results.getThreshold()) {
+                    candidates.push(neighbour, neighbourSimilarity);
+                    results.offer(neighbour, neighbourSimilarity);
+                }
+            }
+        }
+        
+        return results.drain();
+    }
+    
+    /**
+     * Picks up to M neighbours from the candidates with the HNSW heuristic: a candidate
+     * is skipped if it is closer to an already chosen neighbour than to the new node,
+     * which spreads links across clusters. Skipped candidates fill any remaining slots.
+     * 
+     * @param candidates The candidates, best first
+     * @return The IDs of the chosen neighbours
+     */
+    private int[] selectNeighbours(List<ScoredChunk> candidates) {
+        int[] selected = new int[Math.min(m, candidates.size())];
+        int count = 0;
+        boolean[] taken = new boolean[candidates.size()];
+        
+        for (int i = 0; i < candidates.size() && count < selected.length; i++) {
+            int candidate = candidates.get(i).getChunkId();
+            double similarityToNode = candidates.get(i).getScore();
+            
+            boolean diverse = true;
+            for (int j = 0; j < count; j++) {
+                if (vectors.similarity(candidate, selected[j]) > similarityToNode) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[count++] = candidate;
+                taken[i] = true;
+            }
+        }
+        
+        for (int i = 0; i < candidates.size() && count < selected.length; i++) {
+            if (!taken[i]) {
+                selected[count++] = candidates.get(i).getChunkId();
+            }
+        }
+        return selected;
+    }
+    
+    /**
+     * Adds a directed link, dropping the least similar neighbour when the node is full
+     * 
+     * @param node The node to link from
+     * @param neighbour The node to link to
+     * @param layer The layer of the link
+     * @param maxLinks The maximum number of links per node on this layer
+     */
+    private void addLink(int node, int neighbour, int layer, int maxLinks) {
+        int[] nodeLinks = links[node][layer];
+        int count = linkCounts[node][layer];
+        
+        if (count < maxLinks) {
+            nodeLinks[count] = neighbour;
+            linkCounts[node][layer] = count + 1;
+            return;
+        }
+        
+        // Replace the least similar existing neighbour if the new one is closer
+        int weakest = -1;
+        float weakestSimilarity = vectors.similarity(node, neighbour);
+        for (int i = 0; i < count; i++) {
+            float similarity = vectors.similarity(node, nodeLinks[i]);
+            if (similarity < weakestSimilarity) {
+                weakestSimilarity = similarity;
+                weakest = i;
+            }
+        }
+        if (weakest >= 0) {
+            nodeLinks[weakest] = neighbour;
+        }
+    }
+    
+    /**
+     * Allocates the link arrays of a new node
+     * 
+     * @param node The node ID
+     * @param level The highest layer of the node
+     */
+    private void allocateNode(int node, int level) {
+        if (node == links.length) {
+            links = Arrays.copyOf(links, node * 2);
+            linkCounts = Arrays.copyOf(linkCounts, node * 2);
+            visitMarks = Arrays.copyOf(visitMarks, node * 2);
+        }
+        
+        links[node] = new int[level + 1][];
+        linkCounts[node] = new int[level + 1];
+        for (int layer = 0; layer <= level; layer++) {
+            links[node][layer] = new int[layer == 0 ? maxLinksLayer0 : m];
+        }
+    }
+    
+    /**
+     * Growable max-heap of (node, similarity) pairs that pops the most similar node first
+     */
+    private static class CandidateQueue {
+        private int[] nodes = new int[64];
+        private float[] scores = new float[64];
+        private int size;
+        
+        void push(int node, float score) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (scores[parent] >= score) {
+                    break;
+                }
+                nodes[i] = nodes[parent];
+                scores[i] = scores[parent];
+                i = parent;
+            }
+            nodes[i] = node;
+            scores[i] = score;
+        }
+        
+        float peekScore() {
+            return scores[0];
+        }
+        
+        int pop() {
+            int top = nodes[0];
+            size--;
+            
+            int node = nodes[size];
+            float score = scores[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && scores[child + 1] > scores[child]) {
+                    child++;
+                }
+                if (scores[child] <= score) {
+                    break;
+                }
+                nodes[i] = nodes[child];
+                scores[i] = scores[child];
+                i = child;
+            }
+            nodes[i] = node;
+            scores[i] = score;
+            return top;
+        }
+        
+        int size() {
+            return size;
+        }
+    }
+}
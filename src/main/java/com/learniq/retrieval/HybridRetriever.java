@@ -0,0 +1,176 @@
+package com.learniq.retrieval;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Combines a lexical and a dense retriever over the same chunks. Both run in
+ * parallel and their candidate lists are fused, so exact terms such as formula
+ * names and paraphrased questions can both find the right chunk. The two
+ * retrievers must use the same chunk IDs.
+ */
+public class HybridRetriever implements Retriever {
+    private static final Logger LOGGER = Logger.getLogger(HybridRetriever.class.getName());
+    private static final int RRF_K = 60;
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+    private static final ExecutorService SHARED_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "hybrid-retrieval-" + THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    /**
+     * How the two candidate lists are combined
+     */
+    public enum Fusion {
+        /** Weighted reciprocal rank fusion, sum of weight / (60 + rank); ignores the raw scores */
+        RECIPROCAL_RANK,
+        /** Weighted sum of the scores after scaling each list to [0, 1] */
+        WEIGHTED
+    }
+    
+    private final Retriever lexical;
+    private final Retriever dense;
+    private final Fusion fusion;
+    private final double lexicalWeight;
+    private final int candidateCount;
+    private final long denseTimeoutMillis;
+    
+    /**
+     * Creates a hybrid retriever with equally weighted reciprocal rank fusion over
+     * 20 candidates from each retriever, waiting at most 200 ms for the dense side
+     * 
+     * @param lexical The lexical retriever
+     * @param dense The dense retriever
+     */
+    public HybridRetriever(Retriever lexical, Retriever dense) {
+        this(lexical, dense, Fusion.RECIPROCAL_RANK, 0.5, 20, 200);
+    }
+    
+    /**
+     * Creates a hybrid retriever
+     * 
+     * @param lexical The lexical retriever
+     * @param dense The dense retriever
+     * @param fusion How to combine the candidate lists
+     * @param lexicalWeight The weight of the lexical list between 0 and 1; the dense list gets the rest
+     * @param candidateCount How many candidates to fetch from each retriever, at least topK
+     * @param denseTimeoutMillis How long to wait for the dense retriever before answering from the lexical list alone
+     */
+    public HybridRetriever(Retriever lexical, Retriever dense, Fusion fusion, double lexicalWeight,
+                           int candidateCount, long denseTimeoutMillis) {
+        this.lexical = lexical;
+        this.dense = dense;
+        this.fusion = fusion;
+        this.lexicalWeight = lexicalWeight;
+        this.candidateCount = candidateCount;
+        this.denseTimeoutMillis = denseTimeoutMillis;
+    }
+    
+    @Override
+    public List<ScoredChunk> retrieve(String query, int topK) {
+        int depth = Math.max(topK, candidateCount);
+        
+        // The dense side runs on a worker while the lexical side runs on this thread
+        Future<List<ScoredChunk>> denseJob = SHARED_EXECUTOR.submit(() -> dense.retrieve(query, depth));
+        List<ScoredChunk> lexicalResults = lexical.retrieve(query, depth);
+        List<ScoredChunk> denseResults = awaitDense(denseJob);
+        return fuse(lexicalResults, denseResults, fusion, lexicalWeight, topK);
+    }
+    
+    /**
+     * Fuses a lexical and a dense candidate list over the same chunk IDs
+     * 
+     * @param lexicalResults The lexical candidates in descending score order
+     * @param denseResults The dense candidates in descending score order
+     * @param fusion How to combine the candidate lists
+     * @param lexicalWeight The weight of the lexical list between 0 and 1; the dense list gets the rest
+     * @param topK The number of chunks to return
+     * @return The best chunks by fused score, in descending order
+     */
+    public static List<ScoredChunk> fuse(List<ScoredChunk> lexicalResults, List<ScoredChunk> denseResults,
+                                         Fusion fusion, double lexicalWeight, int topK) {
+        Map<Integer, Double> fused = new HashMap<>();
+        addCandidates(fused, lexicalResults, fusion, lexicalWeight);
+        addCandidates(fused, denseResults, fusion, 1.0 - lexicalWeight);
+        
+        TopKSelector selector = new TopKSelector(Math.min(topK, fused.size()));
+        for (Map.Entry<Integer, Double> entry : fused.entrySet()) {
+            selector.offer(entry.getKey(), entry.getValue());
+        }
+        return selector.drain();
+    }
+    
+    @Override
+    public String getChunk(int chunkId) {
+        return lexical.getChunk(chunkId);
+    }
+    
+    /**
+     * Waits for the dense results within the time budget
+     * 
+     * @param denseJob The running dense search
+     * @return The dense results, or an empty list if they failed or took too long
+     */
+    private List<ScoredChunk> awaitDense(Future<List<ScoredChunk>> denseJob) {
+        try {
+            return denseJob.get(denseTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            denseJob.cancel(true);
+            LOGGER.fine("Dense retrieval exceeded " + denseTimeoutMillis + " ms; using lexical results only");
+        } catch (InterruptedException e) {
+            denseJob.cancel(true);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOGGER.log(Level.WARNING, "Dense retrieval failed: " + e.getCause().getMessage(), e.getCause());
+        }
+        return Collections.emptyList();
+    }
+    
+    /**
+     * Adds one retriever's candidates to the fused scores. Candidates without a
+     * positive score did not match the query at all and are skipped.
+     * 
+     * @param fused The fused score of each chunk ID
+     * @param results The candidates in descending score order
+     * @param fusion How to combine the candidate lists
+     * @param weight The weight of this retriever
+     */
+    private static void addCandidates(Map<Integer, Double> fused, List<ScoredChunk> results, Fusion fusion,
+                                      double weight) {
+        if (results.isEmpty() || weight <= 0.0) {
+            return;
+        }
+        
+        double best = results.get(0).getScore();
+        double worst = results.get(results.size() - 1).getScore();
+        
+        int rank = 0;
+        for (ScoredChunk result : results) {
+            if (result.getScore() <= 0.0) {
+                break;
+            }
+            rank++;
+            
+            double contribution;
+            if (fusion == Fusion.RECIPROCAL_RANK) {
+                contribution = weight / (RRF_K + rank);
+            } else {
+                // A list whose scores are all equal counts every candidate fully
+                contribution = best == worst ? weight : weight * (result.getScore() - worst) / (best - worst);
+            }
+            fused.merge(result.getChunkId(), contribution, Double::sum);
+        }
+    }
+}
@@ -0,0 +1,450 @@
+package com.learniq.retrieval;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Immutable index over the chunks of one document, stored in a single file that
+ * is opened with {@link FileChannel#map}. Opening a segment only maps the file;
+ * term lookups, postings and norms are read straight from the mapping without
+ * copying, and pages the OS has not loaded yet are faulted in on first use.
+ * 
+ * The file starts with a fixed header followed by, in order: the TF-IDF norms,
+ * the optional chunk vectors, an open-addressing term table, the term, posting
+ * and chunk offsets, the postings, the chunk lengths, the UTF-8 bytes of the
+ * terms and chunk texts, and the id of the embedding provider that made the
+ * vectors. All numbers are little-endian.
+ */
+public class IndexSegment implements LexicalIndex {
+    private static final int MAGIC = 0x4c514958; // "LQIX"
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 64;
+    
+    private final int chunkCount;
+    private final int termCount;
+    private final int dimension;
+    private final String embeddingProviderId;
+    private final int tableMask;
+    private final double averageChunkLength;
+    
+    private final DoubleBuffer tfidfNorms;
+    private final FloatBuffer vectors;
+    private final IntBuffer termTable;
+    private final IntBuffer termOffsets;
+    private final IntBuffer postingStarts;
+    private final IntBuffer postingChunkIds;
+    private final IntBuffer postingFrequencies;
+    private final IntBuffer chunkLengths;
+    private final IntBuffer chunkOffsets;
+    private final ByteBuffer termBytes;
+    private final ByteBuffer chunkText;
+    
+    /**
+     * Creates a segment over a mapped file
+     * 
+     * @param buffer The mapped file contents
+     * @param file The file, for error messages
+     * @throws IOException If the file is not a valid segment
+     */
+    private IndexSegment(ByteBuffer buffer, Path file) throws IOException {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not an index segment or unknown version: " + file);
+        }
+        
+        chunkCount = buffer.getInt(8);
+        termCount = buffer.getInt(12);
+        int tableSize = buffer.getInt(16);
+        dimension = buffer.getInt(20);
+        int postingTotal = buffer.getInt(24);
+        int termBytesLength = buffer.getInt(28);
+        int chunkTextLength = buffer.getInt(32);
+        int providerIdLength = buffer.getInt(36);
+        long totalLength = buffer.getLong(40);
+        
+        Layout layout = new Layout(chunkCount, termCount, tableSize, dimension, postingTotal,
+            termBytesLength, chunkTextLength, providerIdLength);
+        if (layout.size != buffer.capacity()) {
+            throw new IOException("Index segment is truncated or corrupt: " + file);
+        }
+        
+        tableMask = tableSize - 1;
+        averageChunkLength = chunkCount == 0 ? 0.0 : (double) totalLength / chunkCount;
+        
+        tfidfNorms = section(buffer, layout.norms, 8L * chunkCount).asDoubleBuffer();
+        vectors = dimension == 0 ? null : section(buffer, layout.vectors, 4L * chunkCount * dimension).asFloatBuffer();
+        termTable = section(buffer, layout.termTable, 4L * tableSize).asIntBuffer();
+        termOffsets = section(buffer, layout.termOffsets, 4L * (termCount + 1)).asIntBuffer();
+        postingStarts = section(buffer, layout.postingStarts, 4L * (termCount + 1)).asIntBuffer();
+        postingChunkIds = section(buffer, layout.postingChunkIds, 4L * postingTotal).asIntBuffer();
+        postingFrequencies = section(buffer, layout.postingFrequencies, 4L * postingTotal).asIntBuffer();
+        chunkLengths = section(buffer, layout.chunkLengths, 4L * chunkCount).asIntBuffer();
+        chunkOffsets = section(buffer, layout.chunkOffsets, 4L * (chunkCount + 1)).asIntBuffer();
+        termBytes = section(buffer, layout.termBytes, termBytesLength);
+        chunkText = section(buffer, layout.chunkText, chunkTextLength);
+        embeddingProviderId = dimension == 0 ? null
+            : StandardCharsets.UTF_8.decode(section(buffer, layout.providerId, providerIdLength)).toString();
+    }
+    
+    /**
+     * Opens a segment file by mapping it read-only. The mapping stays valid after
+     * this method returns and is released when the segment is garbage collected.
+     * 
+     * @param file The segment file
+     * @return The segment
+     * @throws IOException If the file cannot be mapped or is not a valid segment
+     */
+    public static IndexSegment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Index segment is too large to map: " + file);
+            }
+            
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new IndexSegment(buffer.order(ByteOrder.LITTLE_ENDIAN), file);
+        }
+    }
+    
+    /**
+     * Writes an index to a segment file. The file is written under a temporary
+     * name and moved into place, so readers never see a partial segment.
+     * 
+     * @param index The index to write
+     * @param embeddingProvider The provider used to store a vector for every chunk, or null for no vectors
+     * @param file The segment file to create or replace
+     * @throws IOException If the file cannot be written
+     */
+    public static void write(InvertedIndex index, EmbeddingProvider embeddingProvider, Path file) throws IOException {
+        int chunkCount = index.getChunkCount();
+        int termCount = index.getTermCount();
+        int dimension = embeddingProvider == null ? 0 : embeddingProvider.getDimension();
+        byte[] providerId = embeddingProvider == null ? new byte[0] : embeddingProvider.getId().getBytes(StandardCharsets.UTF_8);
+        
+        byte[][] terms = new byte[termCount][];
+        long termBytesLength = 0;
+        long postingTotal = 0;
+        for (int termId = 0; termId < termCount; termId++) {
+            terms[termId] = index.getTerm(termId).getBytes(StandardCharsets.UTF_8);
+            termBytesLength += terms[termId].length;
+            postingTotal += index.getPostingCount(termId);
+        }
+        
+        byte[][] texts = new byte[chunkCount][];
+        long chunkTextLength = 0;
+        long totalLength = 0;
+        for (int chunkId = 0; chunkId < chunkCount; chunkId++) {
+            texts[chunkId] = index.getChunk(chunkId).getBytes(StandardCharsets.UTF_8);
+            chunkTextLength += texts[chunkId].length;
+            totalLength += index.getChunkLength(chunkId);
+        }
+        
+        // Keep the term table at most half full, as in TermDictionary
+        int tableSize = 2;
+        while (tableSize < termCount * 2) {
+            tableSize *= 2;
+        }
+        
+        if (termBytesLength > Integer.MAX_VALUE || chunkTextLength > Integer.MAX_VALUE || postingTotal > Integer.MAX_VALUE) {
+            throw new IOException("Index is too large for a segment");
+        }
+        Layout layout = new Layout(chunkCount, termCount, tableSize, dimension, (int) postingTotal,
+            (int) termBytesLength, (int) chunkTextLength, providerId.length);
+        if (layout.size > Integer.MAX_VALUE) {
+            throw new IOException("Index is too large for a segment");
+        }
+        
+        ByteBuffer buffer = ByteBuffer.allocate((int) layout.size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, chunkCount);
+        buffer.putInt(12, termCount);
+        buffer.putInt(16, tableSize);
+        buffer.putInt(20, dimension);
+        buffer.putInt(24, (int) postingTotal);
+        buffer.putInt(28, (int) termBytesLength);
+        buffer.putInt(32, (int) chunkTextLength);
+        buffer.putInt(36, providerId.length);
+        buffer.putLong(40, totalLength);
+        
+        for (int chunkId = 0; chunkId < chunkCount; chunkId++) {
+            buffer.putDouble((int) layout.norms + 8 * chunkId, index.getTfidfNorm(chunkId));
+        }
+        
+        if (dimension > 0) {
+            int position = (int) layout.vectors;
+            for (int chunkId = 0; chunkId < chunkCount; chunkId++) {
+                for (float value : embeddingProvider.embed(index.getChunk(chunkId))) {
+                    buffer.putFloat(position, value);
+                    position += 4;
+                }
+            }
+        }
+        
+        // Term table slots hold term ID + 1, so 0 marks an empty slot
+        int mask = tableSize - 1;
+        for (int termId = 0; termId < termCount; termId++) {
+            int slot = TermDictionary.mix(index.getTerm(termId).hashCode()) & mask;
+            while (buffer.getInt((int) layout.termTable + 4 * slot) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            buffer.putInt((int) layout.termTable + 4 * slot, termId + 1);
+        }
+        
+        int termOffset = 0;
+        int postingOffset = 0;
+        for (int termId = 0; termId < termCount; termId++) {
+            buffer.putInt((int) layout.termOffsets + 4 * termId, termOffset);
+            buffer.put((int) layout.termBytes + termOffset, terms[termId]);
+            termOffset += terms[termId].length;
+            
+            buffer.putInt((int) layout.postingStarts + 4 * termId, postingOffset);
+            IntBuffer ids = index.getPostingChunkIds(termId);
+            IntBuffer frequencies = index.getPostingFrequencies(termId);
+            for (int p = 0; p < index.getPostingCount(termId); p++) {
+                buffer.putInt((int) layout.postingChunkIds + 4 * postingOffset, ids.get(p));
+                buffer.putInt((int) layout.postingFrequencies + 4 * postingOffset, frequencies.get(p));
+                postingOffset++;
+            }
+        }
+        buffer.putInt((int) layout.termOffsets + 4 * termCount, termOffset);
+        buffer.putInt((int) layout.postingStarts + 4 * termCount, postingOffset);
+        
+        int textOffset = 0;
+        for (int chunkId = 0; chunkId < chunkCount; chunkId++) {
+            buffer.putInt((int) layout.chunkLengths + 4 * chunkId, index.getChunkLength(chunkId));
+            buffer.putInt((int) layout.chunkOffsets + 4 * chunkId, textOffset);
+            buffer.put((int) layout.chunkText + textOffset, texts[chunkId]);
+            textOffset += texts[chunkId].length;
+        }
+        buffer.putInt((int) layout.chunkOffsets + 4 * chunkCount, textOffset);
+        buffer.put((int) layout.providerId, providerId);
+        
+        Path folder = file.toAbsolutePath().getParent();
+        Files.createDirectories(folder);
+        Path tempFile = Files.createTempFile(folder, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            
+            try {
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+    
+    @Override
+    public int getTermId(String term) {
+        byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+        for (int slot = TermDictionary.mix(term.hashCode()) & tableMask; ; slot = (slot + 1) & tableMask) {
+            int entry = termTable.get(slot);
+            if (entry == 0) {
+                return -1;
+            }
+            if (termEquals(entry - 1, bytes)) {
+                return entry - 1;
+            }
+        }
+    }
+    
+    @Override
+    public int getPostingCount(int termId) {
+        return postingStarts.get(termId + 1) - postingStarts.get(termId);
+    }
+    
+    @Override
+    public IntBuffer getPostingChunkIds(int termId) {
+        return postingChunkIds.slice(postingStarts.get(termId), getPostingCount(termId));
+    }
+    
+    @Override
+    public IntBuffer getPostingFrequencies(int termId) {
+        return postingFrequencies.slice(postingStarts.get(termId), getPostingCount(termId));
+    }
+    
+    @Override
+    public double getTfidfNorm(int chunkId) {
+        return tfidfNorms.get(chunkId);
+    }
+    
+    @Override
+    public double getAverageChunkLength() {
+        return averageChunkLength;
+    }
+    
+    @Override
+    public String getChunk(int chunkId) {
+        int start = chunkOffsets.get(chunkId);
+        byte[] bytes = new byte[chunkOffsets.get(chunkId + 1) - start];
+        chunkText.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    @Override
+    public int getChunkLength(int chunkId) {
+        return chunkLengths.get(chunkId);
+    }
+    
+    @Override
+    public int getChunkCount() {
+        return chunkCount;
+    }
+    
+    @Override
+    public int getTermCount() {
+        return termCount;
+    }
+    
+    /**
+     * Checks whether the segment stores a vector for every chunk
+     * 
+     * @return true if the segment was written with an embedding provider
+     */
+    public boolean hasVectors() {
+        return vectors != null;
+    }
+    
+    /**
+     * Gets the number of dimensions of the stored vectors
+     * 
+     * @return The vector dimension, or 0 if the segment has no vectors
+     */
+    public int getDimension() {
+        return dimension;
+    }
+    
+    /**
+     * Gets the id of the embedding provider the stored vectors were made with
+     * 
+     * @return The provider id, or null if the segment has no vectors
+     */
+    public String getEmbeddingProviderId() {
+        return embeddingProviderId;
+    }
+    
+    /**
+     * Gets a read-only exact vector search over the stored vectors, reading
+     * them from the mapping without copying
+     * 
+     * @return The vector search
+     * @throws IllegalStateException If the segment has no vectors
+     */
+    public MappedVectorIndex getVectorIndex() {
+        if (vectors == null) {
+            throw new IllegalStateException("Index segment has no vectors");
+        }
+        return new MappedVectorIndex(vectors, dimension, chunkCount);
+    }
+    
+    /**
+     * Compares a stored term with the UTF-8 bytes of a query term
+     * 
+     * @param termId The ID of the stored term
+     * @param bytes The UTF-8 bytes of the query term
+     * @return true if the terms are equal
+     */
+    private boolean termEquals(int termId, byte[] bytes) {
+        int start = termOffsets.get(termId);
+        if (termOffsets.get(termId + 1) - start != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (termBytes.get(start + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Gets a little-endian view of a section of the file
+     * 
+     * @param buffer The whole file
+     * @param offset The start of the section
+     * @param length The length of the section in bytes
+     * @return The section
+     */
+    private static ByteBuffer section(ByteBuffer buffer, long offset, long length) {
+        return buffer.slice((int) offset, (int) length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+    
+    /**
+     * Byte offsets of the sections of a segment file
+     */
+    private static class Layout {
+        private final long norms;
+        private final long vectors;
+        private final long termTable;
+        private final long termOffsets;
+        private final long postingStarts;
+        private final long postingChunkIds;
+        private final long postingFrequencies;
+        private final long chunkLengths;
+        private final long chunkOffsets;
+        private final long termBytes;
+        private final long chunkText;
+        private final long providerId;
+        private final long size;
+        
+        /**
+         * Computes the section offsets from the header fields
+         * 
+         * @param chunkCount The number of chunks
+         * @param termCount The number of terms
+         * @param tableSize The number of term table slots
+         * @param dimension The vector dimension, or 0 without vectors
+         * @param postingTotal The total number of postings
+         * @param termBytesLength The total UTF-8 length of the terms
+         * @param chunkTextLength The total UTF-8 length of the chunk texts
+         * @param providerIdLength The UTF-8 length of the embedding provider id
+         */
+        private Layout(int chunkCount, int termCount, int tableSize, int dimension, int postingTotal,
+                       int termBytesLength, int chunkTextLength, int providerIdLength) {
+            // Doubles come first so they stay 8-byte aligned
+            long offset = HEADER_SIZE;
+            norms = offset;
+            offset += 8L * chunkCount;
+            vectors = offset;
+            offset += 4L * chunkCount * dimension;
+            termTable = offset;
+            offset += 4L * tableSize;
+            termOffsets = offset;
+            offset += 4L * (termCount + 1);
+            postingStarts = offset;
+            offset += 4L * (termCount + 1);
+            postingChunkIds = offset;
+            offset += 4L * postingTotal;
+            postingFrequencies = offset;
+            offset += 4L * postingTotal;
+            chunkLengths = offset;
+            offset += 4L * chunkCount;
+            chunkOffsets = offset;
+            offset += 4L * (chunkCount + 1);
+            termBytes = offset;
+            offset += termBytesLength;
+            chunkText = offset;
+            offset += chunkTextLength;
+            providerId = offset;
+            offset += providerIdLength;
+            size = offset;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.learniq.retrieval;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Inverted index over text chunks. Each chunk is tokenized once when it is added,
+ * and every term maps to the list of chunks it occurs in with its frequency there,
+ * so a query only has to visit the postings of its own terms. Chunks can be
+ * added at any time, but not concurrently with queries.
+ * 
+ * Terms are interned to int IDs, and the postings of each term are stored as
+ * packed parallel int arrays of chunk IDs and term frequencies in chunk order.
+ */
+public class InvertedIndex implements LexicalIndex {
+    private final TermDictionary dictionary = new TermDictionary();
+    private final List<String> chunks = new ArrayList<>();
+    private int[] chunkLengths = new int[64];
+    private long totalLength;
+    
+    // Postings per term ID; only the first postingCounts[termId] entries are in use
+    private int[][] postingChunkIds = new int[256][];
+    private int[][] postingFrequencies = new int[256][];
+    private int[] postingCounts = new int[256];
+    
+    // Per-chunk TF-IDF vector norms, computed lazily and reset whenever a chunk is added
+    private double[] tfidfNorms;
+    
+    // Term IDs of the chunk being added, reused between chunks
+    private int[] chunkTermIds = new int[256];
+    private int chunkTermCount;
+    
+    /**
+     * Adds a chunk to the index. The terms go straight from the tokenizer's
+     * buffer into the term dictionary, so only new terms become strings.
+     * 
+     * @param chunk The chunk text
+     * @param tokenizer The tokenizer that splits the chunk into normalized terms
+     * @return The ID assigned to the chunk
+     */
+    public int addChunk(String chunk, Tokenizer tokenizer) {
+        int chunkId = chunks.size();
+        chunks.add(chunk);
+        
+        chunkTermCount = 0;
+        tokenizer.tokenizeChars(chunk, this::addChunkTerm);
+        
+        if (chunkId == chunkLengths.length) {
+            chunkLengths = Arrays.copyOf(chunkLengths, chunkLengths.length * 2);
+        }
+        chunkLengths[chunkId] = chunkTermCount;
+        totalLength += chunkTermCount;
+        tfidfNorms = null;
+        
+        // Count term occurrences by sorting the chunk's term IDs and measuring the runs
+        int[] termIds = chunkTermIds;
+        int termCount = chunkTermCount;
+        Arrays.sort(termIds, 0, termCount);
+        
+        int i = 0;
+        while (i < termCount) {
+            int termId = termIds[i];
+            int runEnd = i + 1;
+            while (runEnd < termCount && termIds[runEnd] == termId) {
+                runEnd++;
+            }
+            addPosting(termId, chunkId, runEnd - i);
+            i = runEnd;
+        }
+        
+        return chunkId;
+    }
+    
+    /**
+     * Gets the ID of a term
+     * 
+     * @param term The normalized term
+     * @return The term ID, or -1 if the term is not indexed
+     */
+    @Override
+    public int getTermId(String term) {
+        return dictionary.getId(term);
+    }
+    
+    /**
+     * Gets the term with the given ID
+     * 
+     * @param termId The term ID
+     * @return The normalized term
+     */
+    public String getTerm(int termId) {
+        return dictionary.getTerm(termId);
+    }
+    
+    /**
+     * Gets the number of chunks a term occurs in
+     * 
+     * @param termId The term ID
+     * @return The number of postings of the term
+     */
+    @Override
+    public int getPostingCount(int termId) {
+        return postingCounts[termId];
+    }
+    
+    /**
+     * Gets the chunk IDs of a term's postings. The returned buffer wraps the index's
+     * own storage; it is only valid until the next chunk is added.
+     * 
+     * @param termId The term ID
+     * @return The chunk IDs in ascending order
+     */
+    @Override
+    public IntBuffer getPostingChunkIds(int termId) {
+        return IntBuffer.wrap(postingChunkIds[termId], 0, postingCounts[termId]);
+    }
+    
+    /**
+     * Gets the term frequencies of a term's postings, parallel to {@link #getPostingChunkIds(int)}
+     * 
+     * @param termId The term ID
+     * @return The term frequencies
+     */
+    @Override
+    public IntBuffer getPostingFrequencies(int termId) {
+        return IntBuffer.wrap(postingFrequencies[termId], 0, postingCounts[termId]);
+    }
+    
+    /**
+     * Gets the number of chunks a term occurs in
+     * 
+     * @param term The normalized term
+     * @return The document frequency of the term
+     */
+    public int getDocumentFrequency(String term) {
+        int termId = dictionary.getId(term);
+        return termId < 0 ? 0 : postingCounts[termId];
+    }
+    
+    /**
+     * Gets the length of a chunk's TF-IDF vector, using (1 + ln tf) * idf weights
+     * 
+     * @param chunkId The ID of the chunk
+     * @return The vector norm, or 0 for a chunk without terms
+     */
+    @Override
+    public double getTfidfNorm(int chunkId) {
+        if (tfidfNorms == null) {
+            double[] sums = new double[chunks.size()];
+            for (int termId = 0; termId < dictionary.size(); termId++) {
+                double idf = getIdf(termId);
+                int[] ids = postingChunkIds[termId];
+                int[] frequencies = postingFrequencies[termId];
+                for (int p = 0; p < postingCounts[termId]; p++) {
+                    double weight = (1.0 + Math.log(frequencies[p])) * idf;
+                    sums[ids[p]] += weight * weight;
+                }
+            }
+            for (int i = 0; i < sums.length; i++) {
+                sums[i] = Math.sqrt(sums[i]);
+            }
+            tfidfNorms = sums;
+        }
+        
+        return tfidfNorms[chunkId];
+    }
+    
+    /**
+     * Gets the average number of terms per chunk
+     * 
+     * @return The average chunk length, or 0 for an empty index
+     */
+    @Override
+    public double getAverageChunkLength() {
+        return chunks.isEmpty() ? 0.0 : (double) totalLength / chunks.size();
+    }
+    
+    /**
+     * Gets the text of a chunk
+     * 
+     * @param chunkId The ID of the chunk
+     * @return The chunk text
+     */
+    @Override
+    public String getChunk(int chunkId) {
+        return chunks.get(chunkId);
+    }
+    
+    /**
+     * Gets the number of terms in a chunk
+     * 
+     * @param chunkId The ID of the chunk
+     * @return The chunk length in terms
+     */
+    @Override
+    public int getChunkLength(int chunkId) {
+        return chunkLengths[chunkId];
+    }
+    
+    /**
+     * Gets the number of indexed chunks
+     * 
+     * @return The chunk count
+     */
+    @Override
+    public int getChunkCount() {
+        return chunks.size();
+    }
+    
+    /**
+     * Gets the number of distinct terms in the index
+     * 
+     * @return The term count
+     */
+    @Override
+    public int getTermCount() {
+        return dictionary.size();
+    }
+    
+    /**
+     * Interns a term of the chunk being added and records its ID
+     * 
+     * @param buffer Holds the term in its first length characters
+     * @param length The number of characters in the term
+     */
+    private void addChunkTerm(char[] buffer, int length) {
+        if (chunkTermCount == chunkTermIds.length) {
+            chunkTermIds = Arrays.copyOf(chunkTermIds, chunkTermIds.length * 2);
+        }
+        chunkTermIds[chunkTermCount++] = dictionary.add(buffer, length);
+    }
+    
+    /**
+     * Appends a posting to a term's posting arrays, growing them as needed
+     * 
+     * @param termId The term ID
+     * @param chunkId The ID of the chunk
+     * @param frequency The number of times the term occurs in the chunk
+     */
+    private void addPosting(int termId, int chunkId, int frequency) {
+        if (termId >= postingCounts.length) {
+            int capacity = Math.max(postingCounts.length * 2, termId + 1);
+            postingChunkIds = Arrays.copyOf(postingChunkIds, capacity);
+            postingFrequencies = Arrays.copyOf(postingFrequencies, capacity);
+            postingCounts = Arrays.copyOf(postingCounts, capacity);
+        }
+        
+        int count = postingCounts[termId];
+        if (postingChunkIds[termId] == null) {
+            postingChunkIds[termId] = new int[4];
+            postingFrequencies[termId] = new int[4];
+        } else if (count == postingChunkIds[termId].length) {
+            postingChunkIds[termId] = Arrays.copyOf(postingChunkIds[termId], count * 2);
+            postingFrequencies[termId] = Arrays.copyOf(postingFrequencies[termId], count * 2);
+        }
+        
+        postingChunkIds[termId][count] = chunkId;
+        postingFrequencies[termId][count] = frequency;
+        postingCounts[termId] = count + 1;
+    }
+}
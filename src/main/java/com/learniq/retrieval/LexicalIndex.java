@@ -0,0 +1,99 @@
+package com.learniq.retrieval;
+
+import java.nio.IntBuffer;
+
+/**
+ * Read access to a term index over text chunks, as needed to score a query.
+ * Implemented by the in-memory {@link InvertedIndex} and by the memory-mapped
+ * {@link IndexSegment}.
+ */
+public interface LexicalIndex {
+    /**
+     * Gets the ID of a term
+     * 
+     * @param term The normalized term
+     * @return The term ID, or -1 if the term is not indexed
+     */
+    int getTermId(String term);
+    
+    /**
+     * Gets the number of chunks a term occurs in
+     * 
+     * @param termId The term ID
+     * @return The number of postings of the term
+     */
+    int getPostingCount(int termId);
+    
+    /**
+     * Gets the chunk IDs of a term's postings. Only the first
+     * {@link #getPostingCount(int)} entries are valid; read them with absolute gets.
+     * 
+     * @param termId The term ID
+     * @return The chunk IDs in ascending order
+     */
+    IntBuffer getPostingChunkIds(int termId);
+    
+    /**
+     * Gets the term frequencies of a term's postings, parallel to {@link #getPostingChunkIds(int)}
+     * 
+     * @param termId The term ID
+     * @return The term frequencies
+     */
+    IntBuffer getPostingFrequencies(int termId);
+    
+    /**
+     * Gets the smoothed inverse document frequency of a term,
+     * ln((N + 1) / (df + 1)) + 1, so terms found in every chunk still count a little
+     * 
+     * @param termId The term ID
+     * @return The IDF weight of the term
+     */
+    default double getIdf(int termId) {
+        return Math.log((getChunkCount() + 1.0) / (getPostingCount(termId) + 1.0)) + 1.0;
+    }
+    
+    /**
+     * Gets the length of a chunk's TF-IDF vector, using (1 + ln tf) * idf weights
+     * 
+     * @param chunkId The ID of the chunk
+     * @return The vector norm, or 0 for a chunk without terms
+     */
+    double getTfidfNorm(int chunkId);
+    
+    /**
+     * Gets the average number of terms per chunk
+     * 
+     * @return The average chunk length, or 0 for an empty index
+     */
+    double getAverageChunkLength();
+    
+    /**
+     * Gets the text of a chunk
+     * 
+     * @param chunkId The ID of the chunk
+     * @return The chunk text
+     */
+    String getChunk(int chunkId);
+    
+    /**
+     * Gets the number of terms in a chunk
+     * 
+     * @param chunkId The ID of the chunk
+     * @return The chunk length in terms
+     */
+    int getChunkLength(int chunkId);
+    
+    /**
+     * Gets the number of indexed chunks
+     * 
+     * @return The chunk count
+     */
+    int getChunkCount();
+    
+    /**
+     * Gets the number of distinct terms in the index
+     * 
+     * @return The term count
+     */
+    int getTermCount();
+}
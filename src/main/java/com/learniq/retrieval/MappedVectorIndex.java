@@ -0,0 +1,102 @@
+package com.learniq.retrieval;
+
+import java.nio.FloatBuffer;
+import java.util.List;
+
+/**
+ * Read-only exact nearest-neighbour search over unit-length vectors stored back
+ * to back in a buffer, typically a section of a memory-mapped {@link IndexSegment}
+ */
+public class MappedVectorIndex implements VectorSearch {
+    private final FloatBuffer vectors;
+    private final int dimension;
+    private final int size;
+    
+    /**
+     * Creates a search over stored vectors
+     * 
+     * @param vectors The vectors, back to back
+     * @param dimension The number of dimensions of the vectors
+     * @param size The number of vectors
+     */
+    public MappedVectorIndex(FloatBuffer vectors, int dimension, int size) {
+        this.vectors = vectors;
+        this.dimension = dimension;
+        this.size = size;
+    }
+    
+    /**
+     * Finds the vectors with the highest dot product with the query
+     * 
+     * @param query The query vector
+     * @param topK The number of results to return
+     * @return The best vector IDs and their dot products, in descending order
+     */
+    @Override
+    public List<ScoredChunk> search(float[] query, int topK) {
+        TopKSelector selector = new TopKSelector(Math.min(topK, size));
+        for (int id = 0; id < size; id++) {
+            selector.offer(id, dot(query, id * dimension));
+        }
+        return selector.drain();
+    }
+    
+    /**
+     * Gets a copy of a stored vector
+     * 
+     * @param id The ID of the vector
+     * @return The vector
+     */
+    public float[] getVector(int id) {
+        float[] vector = new float[dimension];
+        vectors.get(id * dimension, vector);
+        return vector;
+    }
+    
+    /**
+     * Gets the number of dimensions of the vectors
+     * 
+     * @return The vector dimension
+     */
+    public int getDimension() {
+        return dimension;
+    }
+    
+    /**
+     * Gets the number of vectors
+     * 
+     * @return The vector count
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Computes the dot product of the query with a stored vector, with four
+     * independent accumulators as in {@link VectorIndex}
+     * 
+     * @param query The query vector
+     * @param offset The start of the stored vector in the buffer
+     * @return The dot product
+     */
+    private float dot(float[] query, int offset) {
+        float sum0 = 0f;
+        float sum1 = 0f;
+        float sum2 = 0f;
+        float sum3 = 0f;
+        
+        int i = 0;
+        for (; i + 3 < dimension; i += 4) {
+            sum0 += query[i] * vectors.get(offset + i);
+            sum1 += query[i + 1] * vectors.get(offset + i + 1);
+            sum2 += query[i + 2] * vectors.get(offset + i + 2);
+            sum3 += query[i + 3] * vectors.get(offset + i + 3);
+        }
+        for (; i < dimension; i++) {
+            sum0 += query[i] * vectors.get(offset + i);
+        }
+        
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+}
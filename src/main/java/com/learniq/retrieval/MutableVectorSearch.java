@@ -0,0 +1,14 @@
+package com.learniq.retrieval;
+
+/**
+ * A vector search that vectors can be added to, for indexes built in memory
+ */
+public interface MutableVectorSearch extends VectorSearch {
+    /**
+     * Adds a vector
+     * 
+     * @param vector The vector to add
+     * @return The ID of the vector, assigned in insertion order
+     */
+    int add(float[] vector);
+}
@@ -0,0 +1,69 @@
+package com.learniq.retrieval;
+
+/**
+ * A retrieved chunk with its text and source, read together so they cannot
+ * belong to different chunks when the index changes between reads
+ */
+public class RetrievedChunk {
+    private final int chunkId;
+    private final double score;
+    private final String text;
+    private final String source;
+    
+    /**
+     * Creates a new retrieved chunk
+     * 
+     * @param chunkId The ID of the chunk at the time it was retrieved
+     * @param score The relevance score
+     * @param text The chunk text
+     * @param source Where the chunk came from, or null if every chunk comes from the same document
+     */
+    public RetrievedChunk(int chunkId, double score, String text, String source) {
+        this.chunkId = chunkId;
+        this.score = score;
+        this.text = text;
+        this.source = source;
+    }
+    
+    /**
+     * Gets the ID of the chunk. IDs of an index that renumbers its chunks are
+     * only valid until it changes, so use the text to identify the chunk later.
+     * 
+     * @return The chunk ID
+     */
+    public int getChunkId() {
+        return chunkId;
+    }
+    
+    /**
+     * Gets the relevance score
+     * 
+     * @return The score
+     */
+    public double getScore() {
+        return score;
+    }
+    
+    /**
+     * Gets the text of the chunk
+     * 
+     * @return The chunk text
+     */
+    public String getText() {
+        return text;
+    }
+    
+    /**
+     * Describes where the chunk came from
+     * 
+     * @return The source, or null if every chunk comes from the same document
+     */
+    public String getSource() {
+        return source;
+    }
+    
+    @Override
+    public String toString() {
+        return chunkId + ":" + score;
+    }
+}
@@ -0,0 +1,69 @@
+package com.learniq.retrieval;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the chunks of a document that are most relevant to a query
+ */
+public interface Retriever {
+    /**
+     * Finds the best matching chunks for a query
+     * 
+     * @param query The search query
+     * @param topK The number of chunks to return
+     * @return The best chunks in descending score order
+     */
+    List<ScoredChunk> retrieve(String query, int topK);
+    
+    /**
+     * Gets the text of a chunk
+     * 
+     * @param chunkId The ID of the chunk
+     * @return The chunk text
+     */
+    String getChunk(int chunkId);
+    
+    /**
+     * Describes where a chunk came from, so answers can cite it
+     * 
+     * @param chunkId The ID of the chunk
+     * @return The source, or null if every chunk comes from the same document
+     */
+    default String getSource(int chunkId) {
+        return null;
+    }
+    
+    /**
+     * Finds the best matching chunks for a query along with their text and source.
+     * Retrievers whose chunk IDs can change while they are searched must override
+     * this to read everything from the same version of the index.
+     * 
+     * @param query The search query
+     * @param topK The number of chunks to return
+     * @return The best chunks in descending score order
+     */
+    default List<RetrievedChunk> retrieveChunks(String query, int topK) {
+        List<RetrievedChunk> chunks = new ArrayList<>();
+        for (ScoredChunk result : retrieve(query, topK)) {
+            int chunkId = result.getChunkId();
+            chunks.add(new RetrievedChunk(chunkId, result.getScore(), getChunk(chunkId), getSource(chunkId)));
+        }
+        return chunks;
+    }
+    
+    /**
+     * Gets the text of the best matching chunks for a query
+     * 
+     * @param query The search query
+     * @param topK The number of chunks to return
+     * @return The text of the best chunks in descending score order
+     */
+    default List<String> getRelevantChunks(String query, int topK) {
+        List<String> chunks = new ArrayList<>();
+        for (RetrievedChunk result : retrieveChunks(query, topK)) {
+            chunks.add(result.getText());
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,108 @@
+package com.learniq.retrieval;
+
+import java.util.Arrays;
+
+/**
+ * Sums the scores of one query at a time per chunk, keeping track of which
+ * chunks were touched by a posting. The arrays are reused from query to query
+ * and never cleared: a generation stamp tells this query's scores from stale
+ * ones, so a query costs time in the length of its postings rather than in the
+ * number of chunks in the index.
+ */
+public class ScoreAccumulator {
+    private double[] scores = new double[0];
+    private int[] stamps = new int[0];
+    private int[] touched = new int[64];
+    private int touchedCount;
+    private int generation;
+    
+    /**
+     * Starts accumulating a new query, forgetting the previous one
+     * 
+     * @param chunkCount The number of chunks in the index being scored
+     */
+    public void reset(int chunkCount) {
+        if (chunkCount > scores.length) {
+            scores = new double[chunkCount];
+            stamps = new int[chunkCount];
+            generation = 0;
+        }
+        
+        generation++;
+        if (generation == 0) {
+            // Wrapped around; old stamps could match again
+            Arrays.fill(stamps, 0);
+            generation = 1;
+        }
+        touchedCount = 0;
+    }
+    
+    /**
+     * Adds to the score of a chunk
+     * 
+     * @param chunkId The ID of the chunk
+     * @param score The amount to add
+     */
+    public void add(int chunkId, double score) {
+        if (stamps[chunkId] == generation) {
+            scores[chunkId] += score;
+            return;
+        }
+        
+        stamps[chunkId] = generation;
+        scores[chunkId] = score;
+        if (touchedCount == touched.length) {
+            touched = Arrays.copyOf(touched, touched.length * 2);
+        }
+        touched[touchedCount++] = chunkId;
+    }
+    
+    /**
+     * Gets the number of chunks that have a score in this query
+     * 
+     * @return The touched chunk count
+     */
+    public int getTouchedCount() {
+        return touchedCount;
+    }
+    
+    /**
+     * Gets a chunk that has a score in this query
+     * 
+     * @param i The position in the touched list, from 0 to {@link #getTouchedCount()} - 1
+     * @return The ID of the chunk
+     */
+    public int getTouchedChunkId(int i) {
+        return touched[i];
+    }
+    
+    /**
+     * Checks whether a chunk has a score in this query
+     * 
+     * @param chunkId The ID of the chunk
+     * @return True if a posting of the query touched the chunk
+     */
+    public boolean isTouched(int chunkId) {
+        return stamps[chunkId] == generation;
+    }
+    
+    /**
+     * Gets the score of a touched chunk
+     * 
+     * @param chunkId The ID of the chunk
+     * @return The accumulated score
+     */
+    public double getScore(int chunkId) {
+        return scores[chunkId];
+    }
+    
+    /**
+     * Replaces the score of a touched chunk, e.g. to normalize it
+     * 
+     * @param chunkId The ID of the chunk
+     * @param score The new score
+     */
+    public void setScore(int chunkId, double score) {
+        scores[chunkId] = score;
+    }
+}
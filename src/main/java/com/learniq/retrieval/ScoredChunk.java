@@ -0,0 +1,43 @@
+package com.learniq.retrieval;
+
+/**
+ * A chunk ID with its relevance score for a query
+ */
+public class ScoredChunk {
+    private final int chunkId;
+    private final double score;
+    
+    /**
+     * Creates a new scored chunk
+     * 
+     * @param chunkId The ID of the chunk
+     * @param score The relevance score
+     */
+    public ScoredChunk(int chunkId, double score) {
+        this.chunkId = chunkId;
+        this.score = score;
+    }
+    
+    /**
+     * Gets the ID of the chunk
+     * 
+     * @return The chunk ID
+     */
+    public int getChunkId() {
+        return chunkId;
+    }
+    
+    /**
+     * Gets the relevance score
+     * 
+     * @return The score
+     */
+    public double getScore() {
+        return score;
+    }
+    
+    @Override
+    public String toString() {
+        return chunkId + ":" + score;
+    }
+}
@@ -0,0 +1,175 @@
+package com.learniq.retrieval;
+
+import java.util.Arrays;
+
+/**
+ * Interns terms to dense int IDs using an open-addressing hash table, so the
+ * index can refer to terms by primitive ID instead of boxed map keys
+ */
+public class TermDictionary {
+    private String[] keys = new String[1024];
+    private int[] slots = new int[1024];
+    private String[] terms = new String[512];
+    private int size;
+    
+    /**
+     * Gets the ID of a term
+     * 
+     * @param term The term to look up
+     * @return The term ID, or -1 if the term is not in the dictionary
+     */
+    public int getId(String term) {
+        int mask = keys.length - 1;
+        for (int slot = mix(term.hashCode()) & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot].equals(term)) {
+                return slots[slot];
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Gets the ID of a term, adding the term if it is new
+     * 
+     * @param term The term to intern
+     * @return The term ID
+     */
+    public int add(String term) {
+        int mask = keys.length - 1;
+        int slot = mix(term.hashCode()) & mask;
+        for (; keys[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot].equals(term)) {
+                return slots[slot];
+            }
+        }
+        
+        return insert(slot, term);
+    }
+    
+    /**
+     * Gets the ID of a term, adding the term if it is new. The term is only
+     * copied into a string when it is new.
+     * 
+     * @param buffer Holds the term in its first length characters
+     * @param length The number of characters in the term
+     * @return The term ID
+     */
+    public int add(char[] buffer, int length) {
+        int mask = keys.length - 1;
+        int slot = mix(hash(buffer, length)) & mask;
+        for (; keys[slot] != null; slot = (slot + 1) & mask) {
+            if (matches(keys[slot], buffer, length)) {
+                return slots[slot];
+            }
+        }
+        
+        return insert(slot, new String(buffer, 0, length));
+    }
+    
+    /**
+     * Gets the term with the given ID
+     * 
+     * @param id The term ID
+     * @return The term
+     */
+    public String getTerm(int id) {
+        return terms[id];
+    }
+    
+    /**
+     * Gets the number of terms in the dictionary
+     * 
+     * @return The term count
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Stores a new term in an empty slot
+     * 
+     * @param slot The empty hash table slot found for the term
+     * @param term The term
+     * @return The new term ID
+     */
+    private int insert(int slot, String term) {
+        int id = size++;
+        keys[slot] = term;
+        slots[slot] = id;
+        
+        if (id == terms.length) {
+            terms = Arrays.copyOf(terms, terms.length * 2);
+        }
+        terms[id] = term;
+        
+        // Keep the table at most half full
+        if (size * 2 > keys.length) {
+            rehash();
+        }
+        return id;
+    }
+    
+    /**
+     * Doubles the hash table and reinserts every term
+     */
+    private void rehash() {
+        keys = new String[keys.length * 2];
+        slots = new int[keys.length];
+        int mask = keys.length - 1;
+        
+        for (int id = 0; id < size; id++) {
+            int slot = mix(terms[id].hashCode()) & mask;
+            while (keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = terms[id];
+            slots[slot] = id;
+        }
+    }
+    
+    /**
+     * Hashes characters the same way as {@link String#hashCode()}
+     * 
+     * @param buffer Holds the characters
+     * @param length The number of characters
+     * @return The hash code the string of those characters would have
+     */
+    private static int hash(char[] buffer, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        return hash;
+    }
+    
+    /**
+     * Checks whether a stored term consists of the given characters
+     * 
+     * @param term The stored term
+     * @param buffer Holds the characters
+     * @param length The number of characters
+     * @return true if they are equal
+     */
+    private static boolean matches(String term, char[] buffer, int length) {
+        if (term.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (term.charAt(i) != buffer[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Spreads the bits of a hash code so linear probing works with String hashes
+     * 
+     * @param hash The hash code
+     * @return The mixed hash
+     */
+    static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
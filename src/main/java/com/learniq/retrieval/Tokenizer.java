@@ -0,0 +1,214 @@
+package com.learniq.retrieval;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Splits text into lowercase terms in a single pass over its characters. A term
+ * is a run of letters, digits and combining marks, so accented and non-Latin
+ * words stay intact.
+ * 
+ * Chinese, Japanese and Korean are written without spaces between words, so a
+ * run of Han, Kana or Hangul characters becomes overlapping two-character terms
+ * (a character on its own becomes a one-character term) instead of one term per
+ * run. Terms shorter than the minimum length are skipped only when they are
+ * written in Latin, Greek or Cyrillic letters or digits, where short words are
+ * mostly stop words; in other scripts, such as Devanagari, two-character words
+ * are common and kept.
+ */
+public class Tokenizer {
+    /**
+     * Receives terms without turning them into strings
+     */
+    public interface TermConsumer {
+        /**
+         * Called for every term
+         * 
+         * @param buffer Holds the term in its first length characters; reused for the next term
+         * @param length The number of characters in the term
+         */
+        void accept(char[] buffer, int length);
+    }
+    
+    private final int minLength;
+    
+    /**
+     * Creates a tokenizer that skips Latin, Greek and Cyrillic terms of two characters or fewer
+     */
+    public Tokenizer() {
+        this(3);
+    }
+    
+    /**
+     * Creates a tokenizer
+     * 
+     * @param minLength The minimum number of characters (code points) in a Latin, Greek or Cyrillic term
+     */
+    public Tokenizer(int minLength) {
+        this.minLength = minLength;
+    }
+    
+    /**
+     * Tokenizes text, handing each term to the consumer in order
+     * 
+     * @param text The text to tokenize
+     * @param consumer Receives the terms
+     */
+    public void tokenize(CharSequence text, Consumer<String> consumer) {
+        tokenizeChars(text, (buffer, length) -> consumer.accept(new String(buffer, 0, length)));
+    }
+    
+    /**
+     * Tokenizes text, handing each term to the consumer in order as characters
+     * in a reused buffer, so no string is created per term
+     * 
+     * @param text The text to tokenize
+     * @param consumer Receives the terms
+     */
+    public void tokenizeChars(CharSequence text, TermConsumer consumer) {
+        char[] buffer = new char[32];
+        int length = 0;
+        int codePoints = 0;
+        boolean keepShort = false;
+        
+        // The last Han, Kana or Hangul character, and whether it has not been part of a pair yet
+        char[] pair = new char[4];
+        int previousIdeograph = -1;
+        boolean unpaired = false;
+        
+        int i = 0;
+        int textLength = text.length();
+        
+        while (i < textLength) {
+            char c = text.charAt(i);
+            int codePoint = c;
+            int width = 1;
+            if (Character.isHighSurrogate(c) && i + 1 < textLength && Character.isLowSurrogate(text.charAt(i + 1))) {
+                codePoint = Character.toCodePoint(c, text.charAt(i + 1));
+                width = 2;
+            }
+            i += width;
+            
+            boolean termChar = isTermChar(codePoint);
+            boolean ideograph = termChar && codePoint >= 128 && isIdeographic(codePoint);
+            
+            if (!termChar || ideograph) {
+                if (codePoints > 0 && (keepShort || codePoints >= minLength)) {
+                    consumer.accept(buffer, length);
+                }
+                length = 0;
+                codePoints = 0;
+                keepShort = false;
+            }
+            
+            if (ideograph) {
+                if (previousIdeograph >= 0) {
+                    int pairLength = Character.toChars(previousIdeograph, pair, 0);
+                    pairLength += Character.toChars(codePoint, pair, pairLength);
+                    consumer.accept(pair, pairLength);
+                }
+                unpaired = previousIdeograph < 0;
+                previousIdeograph = codePoint;
+                continue;
+            }
+            
+            if (unpaired) {
+                consumer.accept(pair, Character.toChars(previousIdeograph, pair, 0));
+            }
+            previousIdeograph = -1;
+            unpaired = false;
+            
+            if (termChar) {
+                if (length + 2 > buffer.length) {
+                    char[] grown = new char[buffer.length * 2];
+                    System.arraycopy(buffer, 0, grown, 0, length);
+                    buffer = grown;
+                }
+                length += Character.toChars(Character.toLowerCase(codePoint), buffer, length);
+                codePoints++;
+                if (codePoint >= 128 && !keepShort) {
+                    keepShort = !hasShortStopWords(codePoint);
+                }
+            }
+        }
+        
+        if (codePoints > 0 && (keepShort || codePoints >= minLength)) {
+            consumer.accept(buffer, length);
+        }
+        if (unpaired) {
+            consumer.accept(pair, Character.toChars(previousIdeograph, pair, 0));
+        }
+    }
+    
+    /**
+     * Tokenizes text into a list of terms
+     * 
+     * @param text The text to tokenize
+     * @return The terms in order
+     */
+    public List<String> tokenize(CharSequence text) {
+        List<String> terms = new ArrayList<>();
+        tokenize(text, terms::add);
+        return terms;
+    }
+    
+    /**
+     * Checks whether a character can be part of a term
+     * 
+     * @param codePoint The character
+     * @return true for letters, digits and combining marks
+     */
+    private static boolean isTermChar(int codePoint) {
+        if (codePoint < 128) {
+            // Fast path for ASCII
+            return (codePoint >= 'a' && codePoint <= 'z')
+                || (codePoint >= 'A' && codePoint <= 'Z')
+                || (codePoint >= '0' && codePoint <= '9');
+        }
+        
+        if (Character.isLetterOrDigit(codePoint)) {
+            return true;
+        }
+        
+        // Vowel signs and accents written as separate characters, e.g. in Devanagari
+        int type = Character.getType(codePoint);
+        return type == Character.NON_SPACING_MARK || type == Character.COMBINING_SPACING_MARK;
+    }
+    
+    /**
+     * Checks whether a character belongs to a script written without spaces
+     * between words, which is indexed as character pairs
+     * 
+     * @param codePoint A term character outside ASCII
+     * @return true for Han, Hiragana, Katakana and Hangul
+     */
+    private static boolean isIdeographic(int codePoint) {
+        if (codePoint == 0x30FC) {
+            // The Katakana long vowel mark is shared with Hiragana, so Unicode files it under no script
+            return true;
+        }
+        
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+            || script == Character.UnicodeScript.HIRAGANA
+            || script == Character.UnicodeScript.KATAKANA
+            || script == Character.UnicodeScript.HANGUL;
+    }
+    
+    /**
+     * Checks whether a character belongs to a script whose short words are
+     * mostly stop words, so the minimum term length applies
+     * 
+     * @param codePoint A term character outside ASCII
+     * @return true for Latin, Greek and Cyrillic letters, digits and marks shared between scripts
+     */
+    private static boolean hasShortStopWords(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.LATIN
+            || script == Character.UnicodeScript.GREEK
+            || script == Character.UnicodeScript.CYRILLIC
+            || script == Character.UnicodeScript.COMMON
+            || script == Character.UnicodeScript.INHERITED;
+    }
+}
@@ -0,0 +1,158 @@
+package com.learniq.retrieval;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Selects the K highest scoring chunks with a fixed-size min-heap of primitive
+ * (chunk ID, score) pairs. Offering n candidates costs O(n log K) and allocates
+ * nothing after construction. Among equal scores the lower chunk ID wins.
+ */
+public class TopKSelector {
+    private final int[] ids;
+    private final double[] scores;
+    private int size;
+    
+    /**
+     * Creates a selector that keeps the best k candidates
+     * 
+     * @param k The number of candidates to keep
+     */
+    public TopKSelector(int k) {
+        this.ids = new int[Math.max(k, 0)];
+        this.scores = new double[Math.max(k, 0)];
+    }
+    
+    /**
+     * Offers a candidate
+     * 
+     * @param chunkId The ID of the chunk
+     * @param score The score of the chunk
+     */
+    public void offer(int chunkId, double score) {
+        if (size < ids.length) {
+            ids[size] = chunkId;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (size > 0 && isWorse(ids[0], scores[0], chunkId, score)) {
+            // Replace the worst kept candidate
+            ids[0] = chunkId;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+    
+    /**
+     * Gets the number of kept candidates
+     * 
+     * @return The candidate count
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Gets the lowest kept score, which a new candidate has to beat once the selector is full
+     * 
+     * @return The lowest kept score, or negative infinity if the selector is not full
+     */
+    public double getThreshold() {
+        return size < ids.length ? Double.NEGATIVE_INFINITY : scores[0];
+    }
+    
+    /**
+     * Empties the selector and returns its candidates, best first
+     * 
+     * @return The selected chunks in descending score order
+     */
+    public List<ScoredChunk> drain() {
+        ScoredChunk[] result = new ScoredChunk[size];
+        
+        // Repeatedly remove the worst candidate and fill the result from the back
+        while (size > 0) {
+            result[size - 1] = new ScoredChunk(ids[0], scores[0]);
+            size--;
+            if (size > 0) {
+                ids[0] = ids[size];
+                scores[0] = scores[size];
+                siftDown(0);
+            }
+        }
+        
+        List<ScoredChunk> ordered = new ArrayList<>(result.length);
+        for (ScoredChunk chunk : result) {
+            ordered.add(chunk);
+        }
+        return ordered;
+    }
+    
+    /**
+     * Checks whether candidate a ranks below candidate b
+     * 
+     * @param idA The chunk ID of candidate a
+     * @param scoreA The score of candidate a
+     * @param idB The chunk ID of candidate b
+     * @param scoreB The score of candidate b
+     * @return true if a ranks below b
+     */
+    private static boolean isWorse(int idA, double scoreA, int idB, double scoreB) {
+        return scoreA < scoreB || (scoreA == scoreB && idA > idB);
+    }
+    
+    /**
+     * Moves a heap entry up until its parent ranks below it
+     * 
+     * @param i The heap position to move
+     */
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!isWorse(ids[i], scores[i], ids[parent], scores[parent])) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+    
+    /**
+     * Moves a heap entry down until both children rank above it
+     * 
+     * @param i The heap position to move
+     */
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) {
+                break;
+            }
+            
+            int worst = left;
+            int right = left + 1;
+            if (right < size && isWorse(ids[right], scores[right], ids[left], scores[left])) {
+                worst = right;
+            }
+            if (!isWorse(ids[worst], scores[worst], ids[i], scores[i])) {
+                break;
+            }
+            swap(i, worst);
+            i = worst;
+        }
+    }
+    
+    /**
+     * Swaps two heap entries
+     * 
+     * @param i The first heap position
+     * @param j The second heap position
+     */
+    private void swap(int i, int j) {
+        int id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+        
+        double score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+    }
+}
@@ -0,0 +1,155 @@
+package com.learniq.retrieval;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Exact nearest-neighbour index over unit-length vectors. All vectors are stored
+ * back to back in a single float array, and a search computes the dot product
+ * with every vector in one sequential pass that the JIT can vectorize.
+ */
+public class VectorIndex implements MutableVectorSearch {
+    private final int dimension;
+    private float[] vectors;
+    private int size;
+    
+    /**
+     * Creates an empty index
+     * 
+     * @param dimension The number of dimensions of the vectors
+     */
+    public VectorIndex(int dimension) {
+        this.dimension = dimension;
+        this.vectors = new float[dimension * 64];
+    }
+    
+    /**
+     * Adds a vector to the index
+     * 
+     * @param vector The vector to add
+     * @return The ID of the vector, assigned in insertion order
+     */
+    @Override
+    public int add(float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expected a vector of dimension " + dimension + " but got " + vector.length);
+        }
+        
+        if ((size + 1) * dimension > vectors.length) {
+            vectors = Arrays.copyOf(vectors, vectors.length * 2);
+        }
+        System.arraycopy(vector, 0, vectors, size * dimension, dimension);
+        return size++;
+    }
+    
+    /**
+     * Finds the vectors with the highest dot product with the query
+     * 
+     * @param query The query vector
+     * @param topK The number of results to return
+     * @return The best vector IDs and their dot products, in descending order
+     */
+    @Override
+    public List<ScoredChunk> search(float[] query, int topK) {
+        TopKSelector selector = new TopKSelector(Math.min(topK, size));
+        for (int id = 0; id < size; id++) {
+            selector.offer(id, dot(query, vectors, id * dimension, dimension));
+        }
+        return selector.drain();
+    }
+    
+    /**
+     * Gets the dot product of the query with a stored vector
+     * 
+     * @param query The query vector
+     * @param id The ID of the stored vector
+     * @return The dot product
+     */
+    public float similarity(float[] query, int id) {
+        return dot(query, vectors, id * dimension, dimension);
+    }
+    
+    /**
+     * Gets the dot product of two stored vectors
+     * 
+     * @param first The ID of the first vector
+     * @param second The ID of the second vector
+     * @return The dot product
+     */
+    public float similarity(int first, int second) {
+        return dot(vectors, first * dimension, vectors, second * dimension, dimension);
+    }
+    
+    /**
+     * Gets a copy of a stored vector
+     * 
+     * @param id The ID of the vector
+     * @return The vector
+     */
+    public float[] getVector(int id) {
+        return Arrays.copyOfRange(vectors, id * dimension, (id + 1) * dimension);
+    }
+    
+    /**
+     * Gets the number of dimensions of the vectors
+     * 
+     * @return The vector dimension
+     */
+    public int getDimension() {
+        return dimension;
+    }
+    
+    /**
+     * Gets the number of vectors in the index
+     * 
+     * @return The vector count
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Computes a dot product of the query with a stored vector
+     * 
+     * @param query The query vector
+     * @param data The array holding the other vector
+     * @param offset The start of the other vector in data
+     * @param length The vector dimension
+     * @return The dot product
+     */
+    static float dot(float[] query, float[] data, int offset, int length) {
+        return dot(query, 0, data, offset, length);
+    }
+    
+    /**
+     * Computes a dot product with four independent accumulators, which lets
+     * the JIT keep several multiply-adds in flight and emit SIMD instructions
+     * 
+     * @param a The array holding the first vector
+     * @param offsetA The start of the first vector in a
+     * @param b The array holding the second vector
+     * @param offsetB The start of the second vector in b
+     * @param length The vector dimension
+     * @return The dot product
+     */
+    static float dot(float[] a, int offsetA, float[] b, int offsetB, int length) {
+        float sum0 = 0f;
+        float sum1 = 0f;
+        float sum2 = 0f;
+        float sum3 = 0f;
+        
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            sum0 += a[offsetA + i] * b[offsetB + i];
+            sum1 += a[offsetA + i + 1] * b[offsetB + i + 1];
+            sum2 += a[offsetA + i + 2] * b[offsetB + i + 2];
+            sum3 += a[offsetA + i + 3] * b[offsetB + i + 3];
+        }
+        for (; i < length; i++) {
+            sum0 += a[offsetA + i] * b[offsetB + i];
+        }
+        
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+}
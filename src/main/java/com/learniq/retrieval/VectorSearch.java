@@ -0,0 +1,25 @@
+package com.learniq.retrieval;
+
+import java.util.List;
+
+/**
+ * A searchable collection of unit-length vectors, ranked by dot product.
+ * Read-only; indexes that can grow implement {@link MutableVectorSearch}.
+ */
+public interface VectorSearch {
+    /**
+     * Finds the vectors with the highest dot product with the query
+     * 
+     * @param query The query vector
+     * @param topK The number of results to return
+     * @return The best vector IDs and their dot products, in descending order
+     */
+    List<ScoredChunk> search(float[] query, int topK);
+    
+    /**
+     * Gets the number of vectors
+     * 
+     * @return The vector count
+     */
+    int size();
+}
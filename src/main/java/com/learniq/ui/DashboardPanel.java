@@ -1,5 +1,6 @@
 package com.learniq.ui;
 
+import com.learniq.IngestionService;
 import com.learniq.db.DbUtils;
 import com.learniq.db.Document;
 import com.learniq.db.User;
@@ -10,6 +11,7 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -29,9 +31,14 @@ public class DashboardPanel extends JPanel {
     private final JButton addDocumentButton;
     private final JButton openDocumentButton;
     private final JButton deleteDocumentButton;
+    private final JButton libraryChatButton;
     private final JButton logoutButton;
     private final JLabel statusLabel;
     
+    private final List<String> rowDocumentIds = new ArrayList<>();
+    private final IngestionService.StateListener ingestionListener = (documentId, state) ->
+        SwingUtilities.invokeLater(() -> updateDocumentState(documentId, state));
+    
     /**
      * Creates a new dashboard panel
      * 
@@ -63,7 +70,7 @@ public class DashboardPanel extends JPanel {
         
         // Create the table model
         tableModel = new DefaultTableModel(
-            new Object[]{"Title", "Created Date", "Last Accessed"}, 0) {
+            new Object[]{"Title", "Created Date", "Last Accessed", "Status"}, 0) {
             @Override
             public boolean isCellEditable(int row, int column) {
                 return false;
@@ -98,6 +105,10 @@ public class DashboardPanel extends JPanel {
         deleteDocumentButton.setEnabled(false);
         buttonsPanel.add(deleteDocumentButton);
         
+        libraryChatButton = new JButton("Ask My Library");
+        libraryChatButton.addActionListener(e -> dashboardListener.onLibraryChatRequested());
+        buttonsPanel.add(libraryChatButton);
+        
         // Add the status label
         statusLabel = new JLabel(" ");
         statusLabel.setForeground(Color.RED);
@@ -124,6 +135,7 @@ public class DashboardPanel extends JPanel {
     public void loadDocuments() {
         // Clear the table
         tableModel.setRowCount(0);
+        rowDocumentIds.clear();
         
         // Disable the buttons
         openDocumentButton.setEnabled(false);
@@ -137,11 +149,15 @@ public class DashboardPanel extends JPanel {
                 
                 // Add the documents to the table
                 for (Document document : documents) {
-                    SwingUtilities.invokeLater(() -> tableModel.addRow(new Object[]{
-                        document.getTitle(),
-                        DbUtils.formatDate(document.getCreatedAt()),
-                        DbUtils.formatDate(document.getLastAccessed())
-                    }));
+                    SwingUtilities.invokeLater(() -> {
+                        rowDocumentIds.add(document.getId());
+                        tableModel.addRow(new Object[]{
+                            document.getTitle(),
+                            DbUtils.formatDate(document.getCreatedAt()),
+                            DbUtils.formatDate(document.getLastAccessed()),
+                            formatState(IngestionService.getInstance().getState(document.getId()))
+                        });
+                    });
                 }
             } catch (Exception e) {
                 LOGGER.log(Level.SEVERE, "Error loading documents: " + e.getMessage(), e);
@@ -153,6 +169,56 @@ public class DashboardPanel extends JPanel {
         }).start();
     }
     
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        IngestionService.getInstance().addStateListener(ingestionListener);
+    }
+    
+    @Override
+    public void removeNotify() {
+        IngestionService.getInstance().removeStateListener(ingestionListener);
+        super.removeNotify();
+    }
+    
+    /**
+     * Updates the status column of a document's row
+     * 
+     * @param documentId The ID of the document
+     * @param state The new ingestion state
+     */
+    private void updateDocumentState(String documentId, IngestionService.State state) {
+        int row = rowDocumentIds.indexOf(documentId);
+        if (row != -1) {
+            tableModel.setValueAt(formatState(state), row, 3);
+        }
+    }
+    
+    /**
+     * Formats an ingestion state for display
+     * 
+     * @param state The ingestion state, or null if unknown
+     * @return The text to show in the status column
+     */
+    private static String formatState(IngestionService.State state) {
+        if (state == null) {
+            return "";
+        }
+        
+        switch (state) {
+            case QUEUED:
+                return "Queued";
+            case PROCESSING:
+                return "Processing...";
+            case READY:
+                return "Ready";
+            case FAILED:
+                return "Failed";
+            default:
+                return "";
+        }
+    }
+    
     /**
      * Handles the add document button click
      */
@@ -333,6 +399,11 @@ public class DashboardPanel extends JPanel {
          */
         void onDocumentSelected(Document document);
         
+        /**
+         * Called when the user wants to ask questions across all their documents
+         */
+        void onLibraryChatRequested();
+        
         /**
          * Called when the user requests to logout
          */
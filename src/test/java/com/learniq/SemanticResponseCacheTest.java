@@ -0,0 +1,64 @@
+package com.learniq;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link SemanticResponseCache}
+ */
+public class SemanticResponseCacheTest {
+    private static final long TTL_MILLIS = 60_000;
+    
+    /**
+     * Creates an empty cache with the default threshold
+     * 
+     * @return The cache
+     */
+    private static SemanticResponseCache newCache() {
+        return new SemanticResponseCache(100, TTL_MILLIS, 0.8);
+    }
+    
+    @Test
+    public void rewordedQuestionHits() {
+        SemanticResponseCache cache = newCache();
+        cache.put("doc", "beginner", "What is osmosis?", "Osmosis is ...");
+        
+        assertEquals("Osmosis is ...", cache.get("doc", "beginner", "explain osmosis please"));
+    }
+    
+    @Test
+    public void whenAndWhyQuestionsMissEachOther() {
+        SemanticResponseCache cache = newCache();
+        cache.put("doc", "beginner", "When does osmosis happen?", "It happens when ...");
+        
+        assertNull(cache.get("doc", "beginner", "Why does osmosis happen?"));
+        assertEquals("It happens when ...", cache.get("doc", "beginner", "when does osmosis happen"));
+    }
+    
+    @Test
+    public void whenAndWhereQuestionsMissEachOther() {
+        SemanticResponseCache cache = newCache();
+        cache.put("doc", "beginner", "Where does osmosis happen?", "In cell membranes ...");
+        
+        assertNull(cache.get("doc", "beginner", "When does osmosis happen?"));
+    }
+    
+    @Test
+    public void howQuestionDoesNotAnswerWhatQuestion() {
+        SemanticResponseCache cache = newCache();
+        cache.put("doc", "beginner", "How does photosynthesis work?", "Step by step ...");
+        
+        assertNull(cache.get("doc", "beginner", "What is photosynthesis?"));
+    }
+    
+    @Test
+    public void otherDocumentsAndLevelsMiss() {
+        SemanticResponseCache cache = newCache();
+        cache.put("doc", "beginner", "What is osmosis?", "Osmosis is ...");
+        
+        assertNull(cache.get("other", "beginner", "What is osmosis?"));
+        assertNull(cache.get("doc", "advanced", "What is osmosis?"));
+    }
+}